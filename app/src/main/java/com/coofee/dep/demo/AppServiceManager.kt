@@ -24,6 +24,13 @@ object AppServiceManager {
         TaskManager.getInstance().startTask(service)
     }
 
+    /**
+     * the service is created on first request, with only the services it depends on.
+     */
+    fun addLazyService(service: Task<*>) {
+        TaskManager.getInstance().addLazyTask(service)
+    }
+
     fun addConditionServiceCreator(taskCondition: TaskCondition, service: Task<*>) {
         TaskManager.getInstance().addConditionTask(taskCondition, service)
     }
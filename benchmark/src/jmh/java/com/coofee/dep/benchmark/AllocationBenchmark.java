@@ -0,0 +1,76 @@
+package com.coofee.dep.benchmark;
+
+import com.coofee.dep.TaskManager;
+import com.coofee.dep.TaskPlan;
+import com.coofee.dep.TaskResult;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * allocation of running a compiled {@link TaskPlan}, see gc.alloc.rate.norm of the gc profiler.
+ * <p>
+ * a run allocates its state and one runnable per task up front, but nothing per dispatch or per edge: shapes of
+ * the same task count allocate the same, whatever their edge count (a diamond of 1000 tasks has twice the edges
+ * of a chain). with a listener, each task builds the {@link TaskResult} passed to it once. tasks return a shared
+ * object which is not a Boolean, so the cached results of null/true/false do not hide that allocation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class AllocationBenchmark {
+
+    private static final Object RESULT = new Object();
+
+    private static final Callable<Object> RETURN_RESULT = new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+            return RESULT;
+        }
+    };
+
+    private static final TaskPlan.ExecutionListener EMPTY_LISTENER = new TaskPlan.ExecutionListener() {
+        @Override
+        public void beforeExecute(TaskPlan.Execution execution, String taskName) {
+        }
+
+        @Override
+        public void afterExecute(TaskPlan.Execution execution, String taskName, TaskResult<?> taskResult) {
+        }
+
+        @Override
+        public void onCompleted(TaskPlan.Execution execution) {
+        }
+    };
+
+    @Param({Graphs.CHAIN, Graphs.FAN_OUT, Graphs.DIAMOND})
+    public String shape;
+
+    @Param({"1000"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean listener;
+
+    private TaskPlan mTaskPlan;
+
+    @Setup
+    public void setUp() {
+        TaskManager.init(new TrampolineExecutor());
+        mTaskPlan = TaskPlan.compile(Graphs.build("", shape, size, RETURN_RESULT));
+    }
+
+    @Benchmark
+    public boolean run() {
+        return mTaskPlan.run(listener ? EMPTY_LISTENER : null).isCompleted();
+    }
+}
@@ -0,0 +1,33 @@
+package com.coofee.dep.benchmark;
+
+import com.coofee.dep.TaskSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * cost of creating the tasks and wiring them with {@link TaskSet.Builder}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class BuildBenchmark {
+
+    @Param({Graphs.CHAIN, Graphs.FAN_OUT, Graphs.FAN_IN, Graphs.DIAMOND, Graphs.NESTED})
+    public String shape;
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int size;
+
+    @Benchmark
+    public TaskSet build() {
+        return Graphs.build(shape, size);
+    }
+}
@@ -0,0 +1,51 @@
+package com.coofee.dep.benchmark;
+
+import com.coofee.dep.TaskManager;
+import com.coofee.dep.TaskSet;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * cost of {@link TaskSet#execute()}: every task executes and notifies its children through
+ * onParentTaskFinished, on a {@link TrampolineExecutor} so no thread handoff is measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ExecuteBenchmark {
+
+    @Param({Graphs.CHAIN, Graphs.FAN_OUT, Graphs.FAN_IN, Graphs.DIAMOND, Graphs.NESTED})
+    public String shape;
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int size;
+
+    private TaskSet mTaskSet;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        TaskManager.init(new TrampolineExecutor());
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        // tasks execute only once, so every invocation needs a new graph.
+        mTaskSet = Graphs.build(shape, size);
+    }
+
+    @Benchmark
+    public int execute() {
+        mTaskSet.execute();
+        return mTaskSet.getTaskState();
+    }
+}
@@ -0,0 +1,118 @@
+package com.coofee.dep.benchmark;
+
+import com.coofee.dep.Task;
+import com.coofee.dep.TaskFactory;
+import com.coofee.dep.TaskSet;
+
+import java.util.concurrent.Callable;
+
+/**
+ * graph shapes of no-op tasks, so benchmarks only measure the overhead of the framework.
+ */
+public final class Graphs {
+    public static final String CHAIN = "chain";
+    public static final String FAN_OUT = "fanOut";
+    public static final String FAN_IN = "fanIn";
+    public static final String DIAMOND = "diamond";
+    public static final String NESTED = "nested";
+
+    /**
+     * task count of every task set of the nested shape.
+     */
+    private static final int NESTED_TASK_SET_SIZE = 10;
+
+    static final Callable<Object> NOOP = new Callable<Object>() {
+        @Override
+        public Object call() throws Exception {
+            return Boolean.TRUE;
+        }
+    };
+
+    private Graphs() {
+    }
+
+    public static TaskSet build(String shape, int size) {
+        return build("", shape, size);
+    }
+
+    public static TaskSet build(String prefix, String shape, int size) {
+        return build(prefix, shape, size, NOOP);
+    }
+
+    /**
+     * build a task set of about size tasks calling the callable, every task name starts with the prefix.
+     */
+    public static TaskSet build(String prefix, String shape, int size, Callable<?> callable) {
+        final TaskSet.Builder builder = new TaskSet.Builder(prefix + shape);
+        switch (shape) {
+            case CHAIN: {
+                Task<?> previous = newTask(prefix, 0, callable);
+                builder.add(previous);
+                for (int i = 1; i < size; i++) {
+                    final Task<?> task = newTask(prefix, i, callable);
+                    builder.add(previous).before(task);
+                    previous = task;
+                }
+            }
+            break;
+
+            case FAN_OUT: {
+                builder.add(newTask(prefix, 0, callable));
+                for (int i = 1; i < size; i++) {
+                    builder.before(newTask(prefix, i, callable));
+                }
+            }
+            break;
+
+            case FAN_IN: {
+                builder.add(newTask(prefix, 0, callable));
+                for (int i = 1; i < size; i++) {
+                    builder.after(newTask(prefix, i, callable));
+                }
+            }
+            break;
+
+            case DIAMOND: {
+                final Task<?> source = newTask(prefix, 0, callable);
+                final Task<?> sink = newTask(prefix, size - 1, callable);
+                for (int i = 1; i < size - 1; i++) {
+                    final Task<?> task = newTask(prefix, i, callable);
+                    builder.add(task).after(source).before(sink);
+                }
+                builder.add(source).add(sink);
+            }
+            break;
+
+            case NESTED: {
+                TaskSet previous = null;
+                for (int i = 0; i < size; i += NESTED_TASK_SET_SIZE) {
+                    final TaskSet.Builder nestedBuilder = new TaskSet.Builder(prefix + "set_" + i);
+                    for (int j = i; j < Math.min(size, i + NESTED_TASK_SET_SIZE); j++) {
+                        nestedBuilder.add(newTask(prefix, j, callable));
+                    }
+
+                    final TaskSet taskSet = nestedBuilder.build();
+                    if (previous == null) {
+                        builder.add(taskSet);
+                    } else {
+                        builder.add(previous).before(taskSet);
+                    }
+                    previous = taskSet;
+                }
+            }
+            break;
+
+            default:
+                throw new IllegalArgumentException("unknown shape=" + shape);
+        }
+        return builder.build();
+    }
+
+    static String taskName(String prefix, int index) {
+        return prefix + "task_" + index;
+    }
+
+    private static Task<?> newTask(String prefix, int index, Callable<?> callable) {
+        return TaskFactory.from(taskName(prefix, index), callable, true);
+    }
+}
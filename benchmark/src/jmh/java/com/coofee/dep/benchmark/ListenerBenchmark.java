@@ -0,0 +1,104 @@
+package com.coofee.dep.benchmark;
+
+import com.coofee.dep.Task;
+import com.coofee.dep.TaskManager;
+import com.coofee.dep.TaskSet;
+import com.coofee.dep.TaskSetExecutionListener;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * cost of dispatching {@link TaskSetExecutionListener} callbacks for every task of a task set.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ListenerBenchmark {
+
+    private static final TaskSetExecutionListener EMPTY_LISTENER = new TaskSetExecutionListener() {
+        @Override
+        public void beforeExecuteTaskSet(TaskSet taskSet) {
+        }
+
+        @Override
+        public void afterExecuteTaskSet(TaskSet taskSet) {
+        }
+
+        @Override
+        public void beforeExecute(Task task) {
+        }
+
+        @Override
+        public void afterExecute(Task task) {
+        }
+    };
+
+    @Param({Graphs.FAN_OUT, Graphs.NESTED})
+    public String shape;
+
+    @Param({"1000"})
+    public int size;
+
+    @Param({"0", "1", "4"})
+    public int listenerCount;
+
+    private TaskSet mTaskSet;
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        TaskManager.init(new TrampolineExecutor());
+    }
+
+    @Setup(Level.Invocation)
+    public void setUp() {
+        mTaskSet = Graphs.build(shape, size);
+        for (int i = 0; i < listenerCount; i++) {
+            // listeners are kept in a set, so every one must be a different object.
+            mTaskSet.addTaskSetExecutionListener(new DelegateListener(EMPTY_LISTENER));
+        }
+    }
+
+    @Benchmark
+    public int execute() {
+        mTaskSet.execute();
+        return mTaskSet.getTaskState();
+    }
+
+    private static class DelegateListener implements TaskSetExecutionListener {
+        private final TaskSetExecutionListener mDelegate;
+
+        DelegateListener(TaskSetExecutionListener delegate) {
+            this.mDelegate = delegate;
+        }
+
+        @Override
+        public void beforeExecuteTaskSet(TaskSet taskSet) {
+            mDelegate.beforeExecuteTaskSet(taskSet);
+        }
+
+        @Override
+        public void afterExecuteTaskSet(TaskSet taskSet) {
+            mDelegate.afterExecuteTaskSet(taskSet);
+        }
+
+        @Override
+        public void beforeExecute(Task task) {
+            mDelegate.beforeExecute(task);
+        }
+
+        @Override
+        public void afterExecute(Task task) {
+            mDelegate.afterExecute(task);
+        }
+    }
+}
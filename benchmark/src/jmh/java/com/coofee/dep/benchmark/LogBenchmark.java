@@ -0,0 +1,46 @@
+package com.coofee.dep.benchmark;
+
+import com.coofee.dep.Log;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * allocation of a debug log on the task execution path when debug is off, see gc.alloc.rate.norm of the gc profiler:
+ * the concatenated message is built before the debug check, the parameterized one is not built at all.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LogBenchmark {
+    private static final String TAG = "Dep.LogBenchmark";
+
+    private String mTaskName;
+
+    private Object mTask;
+
+    @Setup
+    public void setUp() {
+        Log.setDebug(false);
+        // not constants, so the message cannot be folded.
+        mTaskName = Graphs.taskName("task", 1);
+        mTask = new StringBuilder(mTaskName);
+    }
+
+    @Benchmark
+    public void concatenated() {
+        Log.d(TAG, "getTask; find task=" + mTask + " by name=" + mTaskName);
+    }
+
+    @Benchmark
+    public void parameterized() {
+        Log.d(TAG, "getTask; find task={} by name={}", mTask, mTaskName);
+    }
+}
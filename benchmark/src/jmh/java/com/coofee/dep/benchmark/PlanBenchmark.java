@@ -0,0 +1,43 @@
+package com.coofee.dep.benchmark;
+
+import com.coofee.dep.TaskManager;
+import com.coofee.dep.TaskPlan;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * cost of running a compiled {@link TaskPlan}, compare with {@link ExecuteBenchmark} which rebuilds the graph.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PlanBenchmark {
+
+    @Param({Graphs.CHAIN, Graphs.FAN_OUT, Graphs.FAN_IN, Graphs.DIAMOND, Graphs.NESTED})
+    public String shape;
+
+    @Param({"10", "1000", "10000", "100000"})
+    public int size;
+
+    private TaskPlan mTaskPlan;
+
+    @Setup
+    public void setUp() {
+        TaskManager.init(new TrampolineExecutor());
+        mTaskPlan = TaskPlan.compile(Graphs.build(shape, size));
+    }
+
+    @Benchmark
+    public boolean run() {
+        return mTaskPlan.run().isCompleted();
+    }
+}
@@ -0,0 +1,65 @@
+package com.coofee.dep.benchmark;
+
+import com.coofee.dep.Task;
+import com.coofee.dep.TaskCondition;
+import com.coofee.dep.TaskManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * cost of {@link TaskManager#getTask(String)} with many registered task sets of nested tasks.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TaskManagerBenchmark {
+
+    private static final TaskCondition CONDITION = new TaskCondition() {
+    };
+
+    @Param({"1", "100", "1000"})
+    public int taskSetCount;
+
+    @Param({"10", "1000"})
+    public int taskSetSize;
+
+    private String mFirstTaskName;
+
+    private String mLastTaskName;
+
+    @Setup
+    public void setUp() {
+        TaskManager.init(new TrampolineExecutor());
+        for (int i = 0; i < taskSetCount; i++) {
+            // register without executing.
+            TaskManager.getInstance().addConditionTask(CONDITION, Graphs.build("set" + i + "_", Graphs.NESTED, taskSetSize));
+        }
+
+        mFirstTaskName = Graphs.taskName("set0_", 0);
+        mLastTaskName = Graphs.taskName("set" + (taskSetCount - 1) + "_", taskSetSize - 1);
+    }
+
+    @Benchmark
+    public Task<?> getFirstTask() {
+        return TaskManager.getInstance().getTask(mFirstTaskName);
+    }
+
+    @Benchmark
+    public Task<?> getLastTask() {
+        return TaskManager.getInstance().getTask(mLastTaskName);
+    }
+
+    @Benchmark
+    public Task<?> getMissingTask() {
+        return TaskManager.getInstance().getTask("missing");
+    }
+}
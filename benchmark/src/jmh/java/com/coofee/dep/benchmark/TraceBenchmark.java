@@ -0,0 +1,37 @@
+package com.coofee.dep.benchmark;
+
+import com.coofee.dep.TraceRecorder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * cost of recording one event into {@link TraceRecorder}, alone and with 4 threads recording at the same time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class TraceBenchmark {
+
+    private final TraceRecorder mTraceRecorder = new TraceRecorder(1 << 16);
+
+    private final String mTaskName = Graphs.taskName("trace", 1);
+
+    @Benchmark
+    public void record() {
+        mTraceRecorder.record(TraceRecorder.EVENT_START, mTaskName, System.nanoTime());
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordContended() {
+        mTraceRecorder.record(TraceRecorder.EVENT_START, mTaskName, System.nanoTime());
+    }
+}
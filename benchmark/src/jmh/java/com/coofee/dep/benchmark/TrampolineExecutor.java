@@ -0,0 +1,33 @@
+package com.coofee.dep.benchmark;
+
+import com.coofee.dep.TaskExecutor;
+
+import java.util.ArrayDeque;
+
+/**
+ * runs every task on the calling thread without recursion, so benchmarks measure the framework and not thread handoff.
+ * only for single threaded benchmarks.
+ */
+public class TrampolineExecutor implements TaskExecutor {
+    private final ArrayDeque<Runnable> mQueue = new ArrayDeque<>();
+
+    private boolean mRunning;
+
+    @Override
+    public void execute(int threadMode, Runnable task) {
+        mQueue.add(task);
+        if (mRunning) {
+            return;
+        }
+
+        mRunning = true;
+        try {
+            Runnable runnable;
+            while ((runnable = mQueue.poll()) != null) {
+                runnable.run();
+            }
+        } finally {
+            mRunning = false;
+        }
+    }
+}
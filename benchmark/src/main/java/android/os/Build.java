@@ -0,0 +1,17 @@
+package android.os;
+
+/**
+ * jvm stub of android.os.Build, only for benchmark.
+ */
+public class Build {
+    public static class VERSION {
+        public static final int SDK_INT = 0;
+    }
+
+    public static class VERSION_CODES {
+        public static final int JELLY_BEAN_MR1 = 17;
+        public static final int LOLLIPOP = 21;
+        public static final int N = 24;
+        public static final int P = 28;
+    }
+}
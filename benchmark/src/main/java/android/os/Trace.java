@@ -0,0 +1,12 @@
+package android.os;
+
+/**
+ * jvm stub of android.os.Trace, only for benchmark.
+ */
+public class Trace {
+    public static void beginSection(String sectionName) {
+    }
+
+    public static void endSection() {
+    }
+}
@@ -0,0 +1,16 @@
+package com.coofee.dep;
+
+/**
+ * a {@link TaskExecutor} which wants to know when the tasks it is given are the children made ready by a completed
+ * task, rather than tasks started by a running one. a completed task calls {@link #beginReleaseChildren()} before
+ * notifying its children and {@link #endReleaseChildren(boolean)} after, on the thread which completed it.
+ */
+public interface ChildReleaseAwareTaskExecutor extends TaskExecutor {
+    /**
+     * @return the previous state of the current thread, passed back to {@link #endReleaseChildren(boolean)};
+     * releasing may nest when a child is completed inline.
+     */
+    boolean beginReleaseChildren();
+
+    void endReleaseChildren(boolean previous);
+}
@@ -0,0 +1,9 @@
+package com.coofee.dep;
+
+/**
+ * a {@link TaskExecutor} which wants to inspect the whole task graph before it is started,
+ * {@link TaskSet#execute()} calls {@link #prepareTaskGraph(Task)} before executing its root task.
+ */
+public interface GraphAwareTaskExecutor extends TaskExecutor {
+    void prepareTaskGraph(Task task);
+}
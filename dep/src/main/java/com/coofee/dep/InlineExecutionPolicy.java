@@ -0,0 +1,22 @@
+package com.coofee.dep;
+
+/**
+ * implemented by a {@link TaskExecutor} to tell which queued tasks a thread blocked in
+ * {@link Task#waitForTaskResult()} may run inline instead of waiting for the executor.
+ */
+public interface InlineExecutionPolicy {
+    /**
+     * used when the executor does not implement the policy: only async tasks may run on any thread.
+     */
+    InlineExecutionPolicy DEFAULT = new InlineExecutionPolicy() {
+        @Override
+        public boolean canExecuteInline(int threadMode) {
+            return threadMode == Task.THREAD_MODE_ASYNC || threadMode == Task.THREAD_MODE_IO;
+        }
+    };
+
+    /**
+     * @return true if a task of the thread mode may run on the current thread.
+     */
+    boolean canExecuteInline(@Task.ThreadMode int threadMode);
+}
@@ -45,4 +45,75 @@ public class Log {
             sLog.e(tag, msg, e);
         }
     }
+
+    // parameterized logs, every '{}' in the format is replaced by the next argument.
+    // the message is only built when debug is on, so call sites on hot paths do not allocate when it is off.
+    // arguments are fixed instead of varargs for not allocating an array.
+
+    public static void d(String tag, String format, Object arg) {
+        if (sDebug) {
+            sLog.d(tag, format(format, arg, null, null));
+        }
+    }
+
+    public static void d(String tag, String format, Object arg1, Object arg2) {
+        if (sDebug) {
+            sLog.d(tag, format(format, arg1, arg2, null));
+        }
+    }
+
+    public static void d(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (sDebug) {
+            sLog.d(tag, format(format, arg1, arg2, arg3));
+        }
+    }
+
+    public static void d(String tag, String format, Object arg, Throwable e) {
+        if (sDebug) {
+            sLog.d(tag, format(format, arg, null, null), e);
+        }
+    }
+
+    public static void e(String tag, String format, Object arg) {
+        if (sDebug) {
+            sLog.e(tag, format(format, arg, null, null));
+        }
+    }
+
+    public static void e(String tag, String format, Object arg1, Object arg2) {
+        if (sDebug) {
+            sLog.e(tag, format(format, arg1, arg2, null));
+        }
+    }
+
+    public static void e(String tag, String format, Object arg1, Object arg2, Object arg3) {
+        if (sDebug) {
+            sLog.e(tag, format(format, arg1, arg2, arg3));
+        }
+    }
+
+    public static void e(String tag, String format, Object arg, Throwable e) {
+        if (sDebug) {
+            sLog.e(tag, format(format, arg, null, null), e);
+        }
+    }
+
+    static String format(String format, Object arg1, Object arg2, Object arg3) {
+        final StringBuilder builder = new StringBuilder(format.length() + 32);
+        int argIndex = 0;
+        int start = 0;
+        while (true) {
+            final int index = format.indexOf("{}", start);
+            if (index < 0 || argIndex == 3) {
+                break;
+            }
+
+            builder.append(format, start, index);
+            builder.append(argIndex == 0 ? arg1 : (argIndex == 1 ? arg2 : arg3));
+            argIndex++;
+            start = index + 2;
+        }
+        builder.append(format, start, format.length());
+        return builder.toString();
+    }
 }
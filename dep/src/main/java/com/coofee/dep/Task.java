@@ -1,13 +1,26 @@
 package com.coofee.dep;
 
+import android.os.Build;
 import android.os.Trace;
 import androidx.annotation.IntDef;
+import androidx.annotation.RequiresApi;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
 public class Task<V> {
     private static final String TAG = "Dep.Task";
@@ -24,23 +37,148 @@ public class Task<V> {
     public static final int THREAD_MODE_UI_ENQUEUE = 1;
     public static final int THREAD_MODE_UI_IDLE = 2;
     public static final int THREAD_MODE_ASYNC = 3;
+    /**
+     * async task which mostly blocks on disk or ipc, executors without a dedicated io pool treat it as
+     * {@link #THREAD_MODE_ASYNC}.
+     */
+    public static final int THREAD_MODE_IO = 4;
 
-    @IntDef(value = {THREAD_MODE_UI_BLOCK, THREAD_MODE_UI_ENQUEUE, THREAD_MODE_UI_IDLE, THREAD_MODE_ASYNC})
+    @IntDef(value = {THREAD_MODE_UI_BLOCK, THREAD_MODE_UI_ENQUEUE, THREAD_MODE_UI_IDLE, THREAD_MODE_ASYNC, THREAD_MODE_IO})
     @interface ThreadMode {
 
     }
 
+    /**
+     * for work nobody waits for, such as analytics and prefetching.
+     */
+    public static final int PRIORITY_LOW = -10;
+    public static final int PRIORITY_DEFAULT = 0;
+    /**
+     * for work the user waits for, such as initializing the first screen.
+     */
+    public static final int PRIORITY_HIGH = 10;
+
+    private static final AtomicIntegerFieldUpdater<Task> TASK_STATE_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(Task.class, "mTaskState");
+
+    private static final AtomicIntegerFieldUpdater<Task> PENDING_PARENT_COUNT_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(Task.class, "mPendingParentCount");
+
+    private static final AtomicIntegerFieldUpdater<Task> DORMANT_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(Task.class, "mDormant");
+
+    private static final AtomicReferenceFieldUpdater<Task, ParentTaskError> PARENT_TASK_ERROR_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(Task.class, ParentTaskError.class, "mParentTaskError");
+
+    private static final AtomicReferenceFieldUpdater<Task, TaskCancelledError> CANCELLED_ERROR_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(Task.class, TaskCancelledError.class, "mCancelledError");
+
+    private static final AtomicReferenceFieldUpdater<Task, TaskResult> TASK_RESULT_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(Task.class, TaskResult.class, "mTaskResult");
+
+    private static final AtomicReferenceFieldUpdater<Task, CallbackNode> CALLBACK_STACK_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(Task.class, CallbackNode.class, "mCallbackStack");
+
+    /**
+     * marks the callback stack of a completed task, callbacks added after it are called directly.
+     */
+    private static final CallbackNode COMPLETED_CALLBACKS = new CallbackNode(null);
+
+    private static final AtomicReferenceFieldUpdater<Task, WaiterNode> WAITER_STACK_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(Task.class, WaiterNode.class, "mWaiterStack");
+
+    /**
+     * marks the waiter stack of a completed task, waiters added after it are woken up directly.
+     */
+    private static final WaiterNode COMPLETED_WAITERS = new WaiterNode(null);
+
+    private static final TaskExecutionListener[] EMPTY_LISTENERS = new TaskExecutionListener[0];
+
+    /**
+     * runnables queued by {@link #executeInline(Runnable)} on the current thread, drained by its outermost call.
+     */
+    private static final ThreadLocal<ArrayDeque<Runnable>> INLINE_RUNNABLES = new ThreadLocal<>();
+
+
     private final String mName;
     private final Callable<V> mCallable;
     private final int mThreadMode;
-    private final CopyOnWriteArraySet<TaskExecutionListener> mListenerList = new CopyOnWriteArraySet<>();
+
+    /**
+     * copy on write, so firing listeners iterates a plain array and allocates nothing.
+     */
+    private volatile TaskExecutionListener[] mListeners = EMPTY_LISTENERS;
 
     private volatile int mTaskState = STATE_NEW;
 
+    /**
+     * set once by whoever completes the task first, the runner or the timeout of the task.
+     */
     private volatile TaskResult<V> mTaskResult;
 
     private volatile ParentTaskError mParentTaskError;
 
+    /**
+     * set once the task is cancelled, it becomes the result of the task unless it is already completed.
+     */
+    private volatile TaskCancelledError mCancelledError;
+
+    /**
+     * the thread calling the callable, interrupted by {@link #cancel(boolean)}; guarded by this for interrupting.
+     */
+    private volatile Thread mRunner;
+
+    /**
+     * run time budget of the task, 0 for none, see {@link #setTimeout(long, TimeUnit)}.
+     */
+    private volatile long mTimeoutNanos;
+
+    /**
+     * lock-free stack of callbacks waiting for the result.
+     */
+    private volatile CallbackNode mCallbackStack;
+
+    /**
+     * threads waiting for this task or a task depending on it, woken up when it is queued or completed.
+     */
+    private volatile WaiterNode mWaiterStack;
+
+    /**
+     * count of parent tasks not finished yet, the task is ready when it drops to 0.
+     */
+    private volatile int mPendingParentCount;
+
+    /**
+     * 1 while a lazy task waits to be demanded, it holds one extra pending count until then.
+     */
+    private volatile int mDormant;
+
+    private volatile long mRank;
+
+    private volatile int mPriority = PRIORITY_DEFAULT;
+
+    /**
+     * the highest priority of the task and its descendants, root/end tasks of task sets have none of their own.
+     */
+    private volatile int mEffectivePriority;
+
+    private volatile long mReadyTimeNanos;
+
+    /**
+     * true once the task is handed to the executor.
+     */
+    private volatile boolean mQueued;
+
+    /**
+     * the callable returned or threw, and its result completed the task; written before reporting completion
+     * on the completing thread.
+     */
+    private boolean mCallableCompleted;
+
+    private long mStartTimeNanos;
+
+    private long mEndTimeNanos;
+
     public Task(String name, Callable<V> callable) {
         this(name, callable, THREAD_MODE_UI_BLOCK);
     }
@@ -49,6 +187,7 @@ public class Task<V> {
         this.mName = name;
         this.mCallable = callable;
         this.mThreadMode = threadMode;
+        this.mEffectivePriority = (isSentinel() ? Integer.MIN_VALUE : PRIORITY_DEFAULT);
     }
 
     @Override
@@ -64,146 +203,705 @@ public class Task<V> {
         return this.mName;
     }
 
-    public boolean addTaskExecutionListener(TaskExecutionListener listener) {
+    public synchronized boolean addTaskExecutionListener(TaskExecutionListener listener) {
         if (listener == null) {
             return false;
         }
-        return mListenerList.add(listener);
+
+        final TaskExecutionListener[] listeners = mListeners;
+        for (TaskExecutionListener l : listeners) {
+            if (l.equals(listener)) {
+                return false;
+            }
+        }
+
+        final TaskExecutionListener[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+        newListeners[listeners.length] = listener;
+        mListeners = newListeners;
+        return true;
     }
 
-    public boolean removeTaskExecutionListener(TaskExecutionListener listener) {
+    public synchronized boolean removeTaskExecutionListener(TaskExecutionListener listener) {
         if (listener == null) {
             return false;
         }
-        return mListenerList.remove(listener);
+
+        final TaskExecutionListener[] listeners = mListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i].equals(listener)) {
+                final TaskExecutionListener[] newListeners = new TaskExecutionListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, newListeners, 0, i);
+                System.arraycopy(listeners, i + 1, newListeners, i, listeners.length - i - 1);
+                mListeners = newListeners;
+                return true;
+            }
+        }
+        return false;
     }
 
-    public void removeAllTaskExecutionListener() {
-        mListenerList.clear();
+    public synchronized void removeAllTaskExecutionListener() {
+        mListeners = EMPTY_LISTENERS;
     }
 
-    public synchronized TaskResult<V> getTaskResult() {
+    public TaskResult<V> getTaskResult() {
         return mTaskResult;
     }
 
+    /**
+     * block until the task is completed. instead of idle waiting, the current thread helps to run the task itself,
+     * or a task it depends on, which is queued in the executor but not started yet, as long as
+     * {@link InlineExecutionPolicy} of the executor allows the task to run on the current thread.
+     */
     public TaskResult<V> waitForTaskResult() throws InterruptedException {
-        synchronized (this) {
-            while (getTaskState() != Task.STATE_COMPLETED) {
-                wait();
+        awaitCompleted(-1);
+        return mTaskResult;
+    }
+
+    /**
+     * like {@link #waitForTaskResult()}, but gives up after the timeout. it does not help to run any task, a hung
+     * task on the current thread would outlast the timeout; so waiting on the ui thread for a ui task queued behind
+     * it times out instead of completing.
+     *
+     * @throws TimeoutException if the task is not completed in time, the task itself keeps running.
+     */
+    public TaskResult<V> waitForTaskResult(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        if (!awaitCompleted(Math.max(0, unit.toNanos(timeout)))) {
+            throw new TimeoutException("wait task=" + mName + " timeout " + unit.toMillis(timeout) + "ms");
+        }
+        return mTaskResult;
+    }
+
+    /**
+     * @param timeoutNanos negative to wait without timeout.
+     * @return false if the timeout elapsed before the task is completed.
+     */
+    private boolean awaitCompleted(long timeoutNanos) throws InterruptedException {
+        if (mTaskState == STATE_COMPLETED) {
+            return true;
+        }
+        if (timeoutNanos == 0) {
+            return false;
+        }
+
+        final boolean timed = (timeoutNanos > 0);
+        final long deadlineNanos = (timed ? System.nanoTime() + timeoutNanos : 0);
+
+        final HelpWaiter waiter = new HelpWaiter(!timed);
+        if (timed) {
+            // only its completion matters, the timed wait does not help.
+            addWaiter(waiter);
+        } else {
+            waiter.watch(this);
+        }
+        try {
+            while (mTaskState != STATE_COMPLETED) {
+                final Task helpTask = waiter.findHelpTask();
+                if (helpTask != null) {
+                    Log.d(TAG, "waitForTaskResult; task={}, help execute task={}", mName, helpTask.mName);
+                    helpTask.innerExecute();
+                    continue;
+                }
+
+                if (!timed) {
+                    LockSupport.park(this);
+                } else {
+                    final long remainingNanos = deadlineNanos - System.nanoTime();
+                    if (remainingNanos <= 0) {
+                        return false;
+                    }
+                    LockSupport.parkNanos(this, remainingNanos);
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            waiter.finish();
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the task to wait for instead of this one, whose ancestors are the tasks helped to run.
+     */
+    Task getHelpTarget() {
+        return this;
+    }
+
+    /**
+     * wake up the thread of the waiter when this task is queued or completed, directly if completed already.
+     */
+    void addWaiter(HelpWaiter waiter) {
+        final WaiterNode node = new WaiterNode(waiter);
+        while (true) {
+            final WaiterNode head = mWaiterStack;
+            if (head == COMPLETED_WAITERS) {
+                LockSupport.unpark(waiter.thread);
+                return;
+            }
+
+            // drop finished waiters on top, so waiting again and again for a task never queued does not pile up.
+            WaiterNode next = head;
+            while (next != null && next.waiter.mFinished) {
+                next = next.next;
+            }
+            node.next = next;
+            if (WAITER_STACK_UPDATER.compareAndSet(this, head, node)) {
+                return;
+            }
+        }
+    }
+
+    private void wakeUpWaiters(boolean completed) {
+        WaiterNode node = (completed ? WAITER_STACK_UPDATER.getAndSet(this, COMPLETED_WAITERS) : mWaiterStack);
+        for (; node != null && node != COMPLETED_WAITERS; node = node.next) {
+            if (!node.waiter.mFinished) {
+                LockSupport.unpark(node.waiter.thread);
+            }
+        }
+    }
+
+    /**
+     * call the callback with the result once the task is completed, without blocking any thread.
+     * the callback is called on the thread completing the task, or directly if the task is already completed.
+     */
+    public void whenComplete(TaskResultCallback<V> callback) {
+        if (callback == null) {
+            return;
+        }
+
+        final CallbackNode node = new CallbackNode(callback);
+        while (true) {
+            final CallbackNode head = mCallbackStack;
+            if (head == COMPLETED_CALLBACKS) {
+                notifyCallback(callback, mTaskResult);
+                return;
             }
 
-            return mTaskResult;
+            node.next = head;
+            if (CALLBACK_STACK_UPDATER.compareAndSet(this, head, node)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return a future completed with the result, or completed exceptionally with the error of the task.
+     */
+    @RequiresApi(24)
+    public CompletableFuture<V> toCompletableFuture() {
+        final CompletableFuture<V> future = new CompletableFuture<>();
+        whenComplete(new TaskResultCallback<V>() {
+            @Override
+            public void onTaskResult(TaskResult<V> taskResult) {
+                if (taskResult.isFailure()) {
+                    future.completeExceptionally(taskResult.error());
+                } else {
+                    future.complete(taskResult.result());
+                }
+            }
+        });
+        return future;
+    }
+
+    private void fireCallbacks(TaskResult<V> taskResult) {
+        CallbackNode head = CALLBACK_STACK_UPDATER.getAndSet(this, COMPLETED_CALLBACKS);
+
+        // reverse the stack, callbacks are called in the order they are added.
+        CallbackNode reversed = null;
+        while (head != null) {
+            final CallbackNode next = head.next;
+            head.next = reversed;
+            reversed = head;
+            head = next;
+        }
+
+        for (CallbackNode node = reversed; node != null; node = node.next) {
+            notifyCallback(node.callback, taskResult);
+        }
+    }
+
+    private void notifyCallback(TaskResultCallback callback, TaskResult taskResult) {
+        try {
+            callback.onTaskResult(taskResult);
+        } catch (Throwable e) {
+            Log.e(TAG, "fail notify callback of task={}", mName, e);
         }
     }
 
     @TaskState
-    public synchronized int getTaskState() {
+    public int getTaskState() {
         return mTaskState;
     }
 
+    Callable<V> getCallable() {
+        return mCallable;
+    }
+
+    @ThreadMode
+    public int getThreadMode() {
+        return mThreadMode;
+    }
+
+    /**
+     * longest remaining path from this task to the end of its graph, weighted by
+     * {@link TaskDurationEstimator}; computed by {@link TaskGraph#computeCriticalPath}.
+     */
+    public long getRank() {
+        return mRank;
+    }
+
+    void setRank(long rank) {
+        this.mRank = rank;
+    }
+
+    public int getPriority() {
+        return mPriority;
+    }
+
+    /**
+     * set the priority of the task, executors with priority-ordered queues run ready tasks of higher
+     * {@link #getEffectivePriority() effective priority} first. its ancestors inherit a higher priority, so a
+     * high priority task does not wait behind low priority work it depends on. set it before the task is wired,
+     * lowering it later leaves the priority its ancestors inherited.
+     */
+    public Task<V> setPriority(int priority) {
+        this.mPriority = priority;
+        int effectivePriority = priority;
+        for (int i = 0, childCount = mChildTasks.size(); i < childCount; i++) {
+            effectivePriority = Math.max(effectivePriority, mChildTasks.get(i).mEffectivePriority);
+        }
+        this.mEffectivePriority = effectivePriority;
+
+        for (int i = 0, parentCount = mParentTasks.size(); i < parentCount; i++) {
+            raisePriority(mParentTasks.get(i), effectivePriority);
+        }
+        return this;
+    }
+
+    /**
+     * @return the highest priority of the task and the tasks depending on it, directly or not.
+     */
+    public int getEffectivePriority() {
+        final int effectivePriority = mEffectivePriority;
+        // an end task nothing depends on.
+        return effectivePriority == Integer.MIN_VALUE ? PRIORITY_DEFAULT : effectivePriority;
+    }
+
+    /**
+     * raise the effective priority of the task and its ancestors to at least the priority. it only goes up, so
+     * every task is raised a few times at most however the graph is wired.
+     */
+    static void raisePriority(Task task, int priority) {
+        if (task.mEffectivePriority >= priority) {
+            return;
+        }
+
+        final ArrayDeque<Task> stack = new ArrayDeque<>();
+        stack.push(task);
+        while (!stack.isEmpty()) {
+            final Task current = stack.pop();
+            if (current.mEffectivePriority >= priority) {
+                continue;
+            }
+
+            current.mEffectivePriority = priority;
+            final TaskEdges parentTasks = current.mParentTasks;
+            for (int i = 0, parentCount = parentTasks.size(); i < parentCount; i++) {
+                stack.push(parentTasks.get(i));
+            }
+        }
+    }
+
+    /**
+     * @return nanoseconds between the task became ready (handed to the executor) and started, 0 if not completed.
+     */
+    public long getQueueWaitNanos() {
+        if (mTaskState != STATE_COMPLETED || mReadyTimeNanos == 0) {
+            return 0;
+        }
+        return mStartTimeNanos - mReadyTimeNanos;
+    }
+
+    /**
+     * @return nanoseconds the task spent running, 0 if not completed.
+     */
+    public long getRunNanos() {
+        if (mTaskState != STATE_COMPLETED) {
+            return 0;
+        }
+        return mEndTimeNanos - mStartTimeNanos;
+    }
+
     public void execute() {
-        TaskManager.getInstance().getTaskExecutor().execute(mThreadMode, mInnerTask);
+        final TaskManager taskManager = TaskManager.getInstance();
+        mReadyTimeNanos = System.nanoTime();
+        mQueued = true;
+        recordTrace(taskManager, TraceRecorder.EVENT_ENQUEUE, mReadyTimeNanos);
+        taskManager.getTaskExecutor().execute(mThreadMode, mInnerTask);
+        wakeUpWaiters(false);
+    }
+
+    private void recordTrace(TaskManager taskManager, byte type, long timestampNanos) {
+        final TraceRecorder traceRecorder = (taskManager == null ? null : taskManager.getTraceRecorder());
+        if (traceRecorder != null && !isSentinel()) {
+            traceRecorder.record(type, mName, timestampNanos);
+        }
     }
 
     protected void fireBeforeExecute() {
-        for (TaskExecutionListener listener : mListenerList) {
+        for (TaskExecutionListener listener : mListeners) {
             listener.beforeExecute(this);
         }
     }
 
     protected void fireAfterExecute() {
-        for (TaskExecutionListener listener : mListenerList) {
+        for (TaskExecutionListener listener : mListeners) {
             listener.afterExecute(this);
         }
     }
 
-    private final Runnable mInnerTask = new Runnable() {
-        @Override
-        public void run() {
-            innerExecute();
-        }
-    };
+    private final Runnable mInnerTask = new TaskRunnable(this);
 
-    private void innerExecute() {
-        synchronized (this) {
-            if (mTaskState != STATE_NEW) {
-                return;
-            }
+    void innerExecute() {
+        // only one thread wins NEW -> RUNNING.
+        if (!TASK_STATE_UPDATER.compareAndSet(this, STATE_NEW, STATE_RUNNING)) {
+            return;
         }
+        mStartTimeNanos = System.nanoTime();
+        final TaskManager taskManager = TaskManager.getInstance();
+        recordTrace(taskManager, TraceRecorder.EVENT_START, mStartTimeNanos);
 
         fireBeforeExecute();
 
-        Log.d(TAG, "start execute task=" + mName);
+        Log.d(TAG, "start execute task={}", mName);
         if (Log.sDebug && Log.SUPPORT_TRACE) {
             Trace.beginSection(mName);
         }
 
-        final ParentTaskError parentTaskError;
-        synchronized (this) {
-            mTaskResult = null;
-            mTaskState = STATE_RUNNING;
-            parentTaskError = mParentTaskError;
-        }
+        final ParentTaskError parentTaskError = mParentTaskError;
 
         TaskResult<V> taskResult;
-        try {
-            if (parentTaskError == null) {
+        boolean callableCompleted = false;
+        if (mCancelledError != null) {
+            taskResult = TaskResult.failure(mCancelledError);
+        } else if (parentTaskError != null) {
+            // fail fast when parent task execute error.
+            Log.e(TAG, parentTaskError.getMessage());
+            taskResult = TaskResult.failure(parentTaskError);
+        } else {
+            final ScheduledFuture<?> timeoutFuture = scheduleTimeout(this, mTimeoutNanos);
+            mRunner = Thread.currentThread();
+            try {
                 taskResult = TaskResult.success(this.mCallable.call());
+            } catch (Throwable e) {
+                Log.e(TAG, "fail execute task={}", mName, e);
+                taskResult = TaskResult.failure(e);
+            }
+            // cleared before checking cancellation, so cancel(true) either sees no runner or is seen here.
+            mRunner = null;
+            if (mCancelledError != null) {
+                synchronized (this) {
+                    // drop the interrupt of cancel(true) before the thread runs other tasks.
+                    Thread.interrupted();
+                }
+                taskResult = TaskResult.failure(mCancelledError);
             } else {
-                // fail fast when parent task execute error.
-                Log.e(TAG, parentTaskError.getMessage());
-                taskResult = TaskResult.failure(parentTaskError);
+                callableCompleted = true;
+            }
+            if (timeoutFuture != null) {
+                timeoutFuture.cancel(false);
             }
-        } catch (Throwable e) {
-            Log.e(TAG, "fail execute task=" + mName, e);
-            taskResult = TaskResult.failure(e);
-        }
-
-        synchronized (this) {
-            mTaskResult = taskResult;
-            mTaskState = STATE_COMPLETED;
-            notifyAll();
         }
 
         if (Log.sDebug && Log.SUPPORT_TRACE) {
             Trace.endSection();
         }
-        Log.d(TAG, "end execute task=" + mName);
+        // the timeout of the task may have completed it already, the late result is dropped.
+        if (TASK_RESULT_UPDATER.compareAndSet(this, null, taskResult)) {
+            mCallableCompleted = callableCompleted;
+            onCompleted(taskManager, taskResult);
+        }
+    }
+
+    /**
+     * @return true if the task is completed by its callable, false if it failed because of its parent, or is
+     * cancelled or timed out before the callable returned; only then the durations of the task are real samples.
+     */
+    boolean isCallableCompleted() {
+        return mCallableCompleted;
+    }
+
+    private void onCompleted(TaskManager taskManager, TaskResult<V> taskResult) {
+        mEndTimeNanos = System.nanoTime();
+        recordTrace(taskManager, TraceRecorder.EVENT_END, mEndTimeNanos);
+        TASK_STATE_UPDATER.compareAndSet(this, STATE_RUNNING, STATE_COMPLETED);
+        // before waking up anyone, so the metrics of the task are visible once its result is.
+        if (taskManager != null) {
+            taskManager.onTaskCompleted(this);
+        }
+        // wake up threads blocked in waitForTaskResult.
+        wakeUpWaiters(true);
+        fireCallbacks(taskResult);
+
+        Log.d(TAG, "end execute task={}", mName);
 
         fireAfterExecute();
 
         // try execute child task;
-        if (!mChildTaskList.isEmpty()) {
-            final List<Task<?>> nonAsyncTaskList = new ArrayList<>(mChildTaskList.size());
-            for (Task<?> task : mChildTaskList) {
-                if (THREAD_MODE_ASYNC == task.mThreadMode) {
-                    // first execute async task for avoid other task block async task.
+        final TaskEdges childTasks = mChildTasks;
+        final int childCount = childTasks.size();
+        if (childCount == 0) {
+            return;
+        }
+
+        final TaskExecutor taskExecutor = (taskManager == null ? null : taskManager.getTaskExecutor());
+        final ChildReleaseAwareTaskExecutor releaseAware = (taskExecutor instanceof ChildReleaseAwareTaskExecutor
+                ? (ChildReleaseAwareTaskExecutor) taskExecutor : null);
+        final boolean releasing = (releaseAware != null && releaseAware.beginReleaseChildren());
+        try {
+            // first execute async task for avoid other task block async task.
+            for (int i = 0; i < childCount; i++) {
+                final Task task = childTasks.get(i);
+                if (task.isAsync()) {
                     task.onParentTaskFinished(this);
-                } else {
-                    nonAsyncTaskList.add(task);
                 }
             }
             // execute other task.
-            for (Task<?> task : nonAsyncTaskList) {
-                task.onParentTaskFinished(this);
+            for (int i = 0; i < childCount; i++) {
+                final Task task = childTasks.get(i);
+                if (!task.isAsync()) {
+                    task.onParentTaskFinished(this);
+                }
+            }
+        } finally {
+            if (releaseAware != null) {
+                releaseAware.endReleaseChildren(releasing);
+            }
+        }
+    }
+
+    /**
+     * cancel the task without interrupting it, see {@link #cancel(boolean)}.
+     */
+    public boolean cancel() {
+        return cancel(false);
+    }
+
+    /**
+     * cancel the task. a task not started yet completes at once on the current thread with a
+     * {@link TaskCancelledError}, and its descendants with a {@link ParentTaskError}, without going through the
+     * executor. a running task is told by {@link #isCancelled()} and interrupted if mayInterruptIfRunning, its result
+     * is a {@link TaskCancelledError} whatever its callable returns.
+     *
+     * @return false if the task is already completed.
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return cancel(new TaskCancelledError("cancel task=" + mName), mayInterruptIfRunning);
+    }
+
+    boolean cancel(TaskCancelledError cancelledError, boolean mayInterruptIfRunning) {
+        if (!markCancelled(cancelledError)) {
+            return false;
+        }
+        finishCancel(mayInterruptIfRunning);
+        return true;
+    }
+
+    /**
+     * @return true if the task is cancelled, long running callables may poll it to stop early.
+     */
+    public boolean isCancelled() {
+        return mCancelledError != null;
+    }
+
+    /**
+     * first step of cancelling, so a task set can mark all of its tasks before completing any of them.
+     *
+     * @return false if the task is already completed.
+     */
+    boolean markCancelled(TaskCancelledError cancelledError) {
+        if (mTaskState == STATE_COMPLETED) {
+            return false;
+        }
+        CANCELLED_ERROR_UPDATER.compareAndSet(this, null, cancelledError);
+        return true;
+    }
+
+    void finishCancel(boolean mayInterruptIfRunning) {
+        if (mTaskState == STATE_NEW) {
+            // parents completed later must not execute it again.
+            PENDING_PARENT_COUNT_UPDATER.set(this, 0);
+            executeInline(mInnerTask);
+        }
+
+        if (mayInterruptIfRunning) {
+            interruptRunner();
+        }
+    }
+
+    private synchronized void interruptRunner() {
+        final Thread runner = mRunner;
+        if (runner != null) {
+            runner.interrupt();
+        }
+    }
+
+    /**
+     * set the run time budget of the task, counted from the start of its callable; must be called before the task
+     * is executed. a task which overruns it completes at once with a {@link TaskTimeoutError}, its runner is
+     * interrupted and whatever its callable returns later is dropped, so a hung task blocks neither its descendants
+     * nor the threads waiting for it. for a {@link TaskSet} the budget covers the whole set from the start of its
+     * root task, all of its tasks not completed in time complete with the timeout error.
+     *
+     * @param timeout 0 for no timeout.
+     */
+    public Task<V> setTimeout(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout must not be negative, timeout=" + timeout);
+        }
+        this.mTimeoutNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    public long getTimeoutNanos() {
+        return mTimeoutNanos;
+    }
+
+    /**
+     * complete the task with the timeout error, and the not completed tasks of a task set.
+     */
+    void timeout(TaskTimeoutError timeoutError) {
+        if (markCancelled(timeoutError)) {
+            finishTimeout();
+        }
+    }
+
+    void finishTimeout() {
+        if (mTaskState == STATE_NEW) {
+            PENDING_PARENT_COUNT_UPDATER.set(this, 0);
+            executeInline(mInnerTask);
+        }
+
+        final TaskResult<V> taskResult = TaskResult.failure(mCancelledError);
+        // unlike cancelling, a running task does not get to finish, that is what the timeout is for.
+        if (mTaskState == STATE_RUNNING && TASK_RESULT_UPDATER.compareAndSet(this, null, taskResult)) {
+            Log.e(TAG, taskResult.error().getMessage());
+            interruptRunner();
+            onCompleted(TaskManager.getInstance(), taskResult);
+        }
+    }
+
+    /**
+     * @return null if there is no timeout.
+     */
+    static ScheduledFuture<?> scheduleTimeout(final Task task, final long timeoutNanos) {
+        if (timeoutNanos <= 0) {
+            return null;
+        }
+        return TimeoutScheduler.EXECUTOR.schedule(new Runnable() {
+            @Override
+            public void run() {
+                task.timeout(new TaskTimeoutError("timeout task=" + task.mName + " after "
+                        + TimeUnit.NANOSECONDS.toMillis(timeoutNanos) + "ms"));
             }
+        }, timeoutNanos, TimeUnit.NANOSECONDS);
+    }
 
-//            for (Task task : mChildTaskList) {
-//                task.onParentTaskFinished(this);
-//            }
+    /**
+     * one daemon thread for the timeouts of all tasks, created on first use.
+     */
+    private static class TimeoutScheduler {
+        static final ScheduledThreadPoolExecutor EXECUTOR;
+
+        static {
+            EXECUTOR = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    final Thread thread = new Thread(r, "Dep.Timeout");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
+                // timeouts are cancelled far more often than they fire.
+                EXECUTOR.setRemoveOnCancelPolicy(true);
+            }
         }
     }
 
-    private final CopyOnWriteArraySet<Task> mParentTaskList = new CopyOnWriteArraySet<>();
-    private final CopyOnWriteArraySet<Task> mChildTaskList = new CopyOnWriteArraySet<>();
+    /**
+     * run on the current thread instead of the executor, for tasks whose result is known without running them.
+     * runnables queued while one runs are drained in a loop, so completing a long chain does not recurse.
+     */
+    static void executeInline(Runnable runnable) {
+        ArrayDeque<Runnable> inlineRunnables = INLINE_RUNNABLES.get();
+        if (inlineRunnables != null) {
+            inlineRunnables.add(runnable);
+            return;
+        }
+
+        inlineRunnables = new ArrayDeque<>();
+        INLINE_RUNNABLES.set(inlineRunnables);
+        try {
+            for (Runnable next = runnable; next != null; next = inlineRunnables.poll()) {
+                next.run();
+            }
+        } finally {
+            INLINE_RUNNABLES.remove();
+        }
+    }
+
+    /**
+     * keep the task from executing, even once its parents are finished, until it or a descendant of it is
+     * demanded; must be called before the task is executed.
+     */
+    void markDormant() {
+        if (DORMANT_UPDATER.compareAndSet(this, 0, 1)) {
+            PENDING_PARENT_COUNT_UPDATER.incrementAndGet(this);
+        }
+    }
+
+    boolean isDormant() {
+        return mDormant == 1;
+    }
+
+    /**
+     * wake up the task and its dormant ancestors, each of them executes once its parents are finished. the walk
+     * stops at tasks demanded already, concurrent demands share the tasks they both need.
+     */
+    void demand() {
+        final ArrayDeque<Task> stack = new ArrayDeque<>();
+        stack.push(this);
+        while (!stack.isEmpty()) {
+            final Task task = stack.pop();
+            if (!DORMANT_UPDATER.compareAndSet(task, 1, 0)) {
+                continue;
+            }
+
+            final TaskEdges parentTasks = task.mParentTasks;
+            for (int i = 0, parentCount = parentTasks.size(); i < parentCount; i++) {
+                stack.push(parentTasks.get(i));
+            }
+            task.releasePending();
+        }
+    }
+
+    private boolean isAsync() {
+        return THREAD_MODE_ASYNC == mThreadMode || THREAD_MODE_IO == mThreadMode;
+    }
+
+    private final TaskEdges mParentTasks = new TaskEdges();
+    private final TaskEdges mChildTasks = new TaskEdges();
 
     boolean before(Task task) {
         if (task == null) {
             return false;
         }
 
-        task.mParentTaskList.add(this);
-        return mChildTaskList.add(task);
+        // a task set is entered through its root task.
+        return addEdge(this, task.headTask());
     }
 
     boolean after(Task task) {
@@ -211,40 +909,228 @@ public class Task<V> {
             return false;
         }
 
-        task.mChildTaskList.add(this);
-        return mParentTaskList.add(task);
+        // a task set is left through its end task.
+        return addEdge(task.tailTask(), this);
     }
 
-    Set<Task> getParentTasks() {
-        return mParentTaskList;
+    /**
+     * @return true if the edge is new.
+     */
+    static boolean addEdge(Task parent, Task child) {
+        return addEdge(parent, child, true, true);
     }
 
-    Set<Task> getChildTasks() {
-        return mChildTaskList;
+    /**
+     * @param checkParent false if the child is known not to have the parent yet.
+     * @param checkChild  false if the parent is known not to have the child yet.
+     */
+    static boolean addEdge(Task parent, Task child, boolean checkParent, boolean checkChild) {
+        if (child.mParentTasks.addTask(parent, checkParent)) {
+            PENDING_PARENT_COUNT_UPDATER.incrementAndGet(child);
+        }
+        // the parent inherits the priority of the child.
+        raisePriority(parent, child.mEffectivePriority);
+        return parent.mChildTasks.addTask(child, checkChild);
     }
 
-    private void onParentTaskFinished(Task parentTask) {
-        mParentTaskList.remove(parentTask);
+    /**
+     * make room for edges about to be added in bulk.
+     */
+    void ensureEdgeCapacity(int parentCount, int childCount) {
+        if (parentCount > 0) {
+            mParentTasks.ensureCapacity(parentCount);
+        }
+        if (childCount > 0) {
+            mChildTasks.ensureCapacity(childCount);
+        }
+    }
+
+    /**
+     * @return true if this is the root/end task of a task set, which does nothing but wiring tasks.
+     */
+    boolean isSentinel() {
+        return mCallable == TaskSet.EMPTY;
+    }
+
+    Task headTask() {
+        return this;
+    }
+
+    Task tailTask() {
+        return this;
+    }
 
+    TaskEdges getParentTasks() {
+        return mParentTasks;
+    }
+
+    TaskEdges getChildTasks() {
+        return mChildTasks;
+    }
+
+    private void onParentTaskFinished(Task parentTask) {
         final TaskResult parentTaskResult = parentTask.mTaskResult;
         if (parentTaskResult.isFailure()) {
+            if (mTaskState != STATE_NEW) {
+                // already completed by cancel.
+                return;
+            }
+
             // fail fast.
-            // it is difficult to cancel all incomplete parent task,
-            // just clear them and they will continue execute.
-            mParentTaskList.clear();
-
-            synchronized (this) {
-                if (mParentTaskError == null) {
-                    // only save first parent task error.
-                    final String cause = "fail execute task=" + mName + " caused by " + parentTask.mName;
-                    mParentTaskError = new ParentTaskError(cause, parentTaskResult.error());
+            // stop waiting for the other parent tasks, they are cancelled only by cancel() or a fail fast task set.
+            if (mParentTaskError == null) {
+                // only save first parent task error.
+                final String cause = "fail execute task=" + mName + " caused by " + parentTask.mName;
+                PARENT_TASK_ERROR_UPDATER.compareAndSet(this, null, new ParentTaskError(cause, parentTaskResult.error()));
+            }
+
+            if (PENDING_PARENT_COUNT_UPDATER.getAndSet(this, 0) > 0) {
+                // the task will not run, complete it here instead of going through the executor.
+                executeInline(mInnerTask);
+            }
+            return;
+        }
+
+        releasePending();
+    }
+
+    /**
+     * one parent task or the demand of a lazy task is done, execute the task if it was the last one.
+     */
+    private void releasePending() {
+        while (true) {
+            final int pendingParentCount = mPendingParentCount;
+            if (pendingParentCount <= 0) {
+                // already executed by a failed parent task.
+                return;
+            }
+
+            if (PENDING_PARENT_COUNT_UPDATER.compareAndSet(this, pendingParentCount, pendingParentCount - 1)) {
+                if (pendingParentCount == 1) {
+                    execute();
                 }
+                return;
             }
+        }
+    }
+
+    /**
+     * one wait of a thread, which helps to run the not started ancestors of the tasks it watches. the traversal
+     * is kept for the whole wait: each ancestor is visited once, and woken up again only the ancestors still not
+     * queued are checked, instead of walking the whole graph on every wake up.
+     */
+    static final class HelpWaiter {
+        final Thread thread = Thread.currentThread();
+
+        private final boolean mHelp;
+
+        private final InlineExecutionPolicy mPolicy;
+
+        private final Set<Task> mVisited = Collections.newSetFromMap(new IdentityHashMap<Task, Boolean>());
+
+        /**
+         * visited ancestors not queued yet, the waiter is added to each of them.
+         */
+        private final ArrayDeque<Task> mWatched = new ArrayDeque<>();
 
+        private final ArrayDeque<Task> mStack = new ArrayDeque<>();
+
+        volatile boolean mFinished;
+
+        /**
+         * @param help false to be woken up by the completion of the watched tasks only, without helping.
+         */
+        HelpWaiter(boolean help) {
+            this.mHelp = help;
+            if (help) {
+                final TaskManager taskManager = TaskManager.getInstance();
+                final TaskExecutor taskExecutor = (taskManager == null ? null : taskManager.getTaskExecutor());
+                this.mPolicy = (taskExecutor instanceof InlineExecutionPolicy
+                        ? (InlineExecutionPolicy) taskExecutor : InlineExecutionPolicy.DEFAULT);
+            } else {
+                this.mPolicy = null;
+            }
+        }
+
+        /**
+         * wait for the task too, woken up when it or a not started ancestor of it is queued, or it is completed.
+         */
+        void watch(Task task) {
+            final Task target = task.getHelpTarget();
+            if (!mVisited.add(target)) {
+                return;
+            }
+            // always added, its completion ends the wait.
+            target.addWaiter(this);
+            mStack.push(target);
+        }
+
+        /**
+         * @return a not completed ancestor of the watched tasks, or one of themselves, which is queued in the
+         * executor but not started yet, and may run on the current thread; null if none.
+         */
+        Task findHelpTask() {
+            if (!mHelp) {
+                return null;
+            }
+
+            // still not queued ancestors, their parents are visited already unless edges are added later.
+            for (int i = mWatched.size(); i > 0; i--) {
+                mStack.push(mWatched.poll());
+            }
+
+            Task helpTask = null;
+            while (!mStack.isEmpty()) {
+                final Task task = mStack.pop();
+                if (task.mTaskState != STATE_NEW) {
+                    // running or completed, its ancestors are done.
+                    continue;
+                }
+
+                if (!task.mQueued) {
+                    mWatched.add(task);
+                } else if (task.isSentinel() || mPolicy.canExecuteInline(task.mThreadMode)) {
+                    // root/end task of task sets do nothing, so they may run on any thread.
+                    if (helpTask == null) {
+                        helpTask = task;
+                    } else {
+                        mWatched.add(task);
+                    }
+                }
+
+                final TaskEdges parentTasks = task.mParentTasks;
+                for (int i = 0, parentCount = parentTasks.size(); i < parentCount; i++) {
+                    final Task parent = parentTasks.get(i);
+                    if (mVisited.add(parent)) {
+                        // added before checking its state, so queueing it after the check still wakes us up.
+                        parent.addWaiter(this);
+                        mStack.push(parent);
+                    }
+                }
+            }
+            return helpTask;
         }
 
-        if (mParentTaskList.isEmpty()) {
-            execute();
+        void finish() {
+            mFinished = true;
+        }
+    }
+
+    private static class WaiterNode {
+        final HelpWaiter waiter;
+        WaiterNode next;
+
+        WaiterNode(HelpWaiter waiter) {
+            this.waiter = waiter;
+        }
+    }
+
+    private static class CallbackNode {
+        final TaskResultCallback callback;
+        CallbackNode next;
+
+        CallbackNode(TaskResultCallback callback) {
+            this.callback = callback;
         }
     }
 
@@ -253,4 +1139,31 @@ public class Task<V> {
             super(message, cause);
         }
     }
+
+    /**
+     * result of a cancelled task, a {@link CancellationException} so {@link #toCompletableFuture()} is cancelled too.
+     */
+    public static class TaskCancelledError extends CancellationException {
+        public TaskCancelledError(String message) {
+            super(message);
+        }
+
+        /**
+         * @param cause the failure which made a fail fast task set cancel its tasks.
+         */
+        public TaskCancelledError(String message, Throwable cause) {
+            super(message);
+            initCause(cause);
+        }
+    }
+
+    /**
+     * result of a task or task set which overran its {@link #setTimeout(long, TimeUnit) timeout}. unlike a plain
+     * cancellation it is a failure of its own, so it makes a fail fast task set cancel the other tasks.
+     */
+    public static class TaskTimeoutError extends TaskCancelledError {
+        public TaskTimeoutError(String message) {
+            super(message);
+        }
+    }
 }
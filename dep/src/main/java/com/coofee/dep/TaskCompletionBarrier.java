@@ -0,0 +1,197 @@
+package com.coofee.dep;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * tasks started by {@link TaskManager} and not completed yet. a waiter counts the outstanding tasks it waits for
+ * once, tasks added or completed later update its count under the same lock, so waiting for any number of tasks
+ * parks once and no task added during the wait is missed.
+ */
+class TaskCompletionBarrier {
+
+    private static final String TAG = "Dep.TaskCompletionBarrier";
+
+    static final TaskFilter ALL = new TaskFilter() {
+        @Override
+        public boolean accept(Task task) {
+            return true;
+        }
+    };
+
+    /**
+     * tasks are compared by identity, a completed task with the same name may be started again.
+     * written under the lock of the barrier, read without lock to skip tasks which are not tracked.
+     * typed as ConcurrentMap, {@link ConcurrentHashMap#keySet()} returns KeySetView since api 24.
+     */
+    private final ConcurrentMap<Task, Boolean> mOutstandingTasks = new ConcurrentHashMap<>();
+
+    /**
+     * guarded by this.
+     */
+    private final List<Waiter> mWaiters = new ArrayList<>();
+
+    /**
+     * track the task until it is completed; must be called before the task is executed.
+     */
+    void add(Task task) {
+        synchronized (this) {
+            if (mOutstandingTasks.putIfAbsent(task, Boolean.TRUE) != null) {
+                return;
+            }
+
+            for (int i = 0, size = mWaiters.size(); i < size; i++) {
+                final Waiter waiter = mWaiters.get(i);
+                if (!waiter.filter.accept(task)) {
+                    continue;
+                }
+                if (!waiter.any) {
+                    waiter.remaining++;
+                }
+                // a helping waiter watches the new task too.
+                LockSupport.unpark(waiter.thread);
+            }
+        }
+
+        // completed already, it will never report completion again.
+        if (task.getTaskState() == Task.STATE_COMPLETED) {
+            onCompleted(task);
+        }
+    }
+
+    void onCompleted(Task task) {
+        // most completed tasks are not tracked, such as tasks of task sets.
+        if (!mOutstandingTasks.containsKey(task)) {
+            return;
+        }
+
+        synchronized (this) {
+            if (mOutstandingTasks.remove(task) == null) {
+                return;
+            }
+
+            for (int i = mWaiters.size() - 1; i >= 0; i--) {
+                final Waiter waiter = mWaiters.get(i);
+                if (!waiter.filter.accept(task)) {
+                    continue;
+                }
+                if (!waiter.any && --waiter.remaining > 0) {
+                    continue;
+                }
+
+                waiter.completedTask = task;
+                waiter.done = true;
+                mWaiters.remove(i);
+                LockSupport.unpark(waiter.thread);
+            }
+        }
+    }
+
+    /**
+     * @param timeoutNanos negative to wait without timeout, helping to run the queued tasks it waits for like
+     *                     {@link Task#waitForTaskResult()}.
+     * @return false if the timeout elapsed before all outstanding tasks accepted by the filter are completed.
+     */
+    boolean awaitAll(TaskFilter filter, long timeoutNanos) throws InterruptedException {
+        return await(new Waiter(filter, false), timeoutNanos);
+    }
+
+    /**
+     * @return the first outstanding task accepted by the filter to complete, null if there is no such task or the
+     * timeout elapsed.
+     */
+    Task awaitAny(TaskFilter filter, long timeoutNanos) throws InterruptedException {
+        final Waiter waiter = new Waiter(filter, true);
+        return await(waiter, timeoutNanos) ? waiter.completedTask : null;
+    }
+
+    private boolean await(Waiter waiter, long timeoutNanos) throws InterruptedException {
+        synchronized (this) {
+            for (Task task : mOutstandingTasks.keySet()) {
+                if (waiter.filter.accept(task)) {
+                    waiter.remaining++;
+                }
+            }
+            if (waiter.remaining == 0) {
+                // nothing to wait for, any has nothing to return.
+                return !waiter.any;
+            }
+            mWaiters.add(waiter);
+        }
+
+        final boolean timed = (timeoutNanos >= 0);
+        final long deadlineNanos = (timed ? System.nanoTime() + timeoutNanos : 0);
+        // woken up by the completions of the barrier, and when helping, by the tasks it could help queued.
+        final Task.HelpWaiter helpWaiter = (timed ? null : new Task.HelpWaiter(true));
+        try {
+            while (!waiter.done) {
+                final Task helpTask = (timed ? null : findHelpTask(waiter.filter, helpWaiter));
+                if (helpTask != null) {
+                    Log.d(TAG, "await; help execute task={}", helpTask.getName());
+                    helpTask.innerExecute();
+                    continue;
+                }
+
+                if (!timed) {
+                    LockSupport.park(this);
+                } else {
+                    final long remainingNanos = deadlineNanos - System.nanoTime();
+                    if (remainingNanos <= 0) {
+                        break;
+                    }
+                    LockSupport.parkNanos(this, remainingNanos);
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+        } finally {
+            if (helpWaiter != null) {
+                helpWaiter.finish();
+            }
+            if (!waiter.done) {
+                synchronized (this) {
+                    mWaiters.remove(waiter);
+                }
+            }
+        }
+        return waiter.done;
+    }
+
+    private Task findHelpTask(TaskFilter filter, Task.HelpWaiter helpWaiter) {
+        for (Task task : mOutstandingTasks.keySet()) {
+            if (task.getTaskState() != Task.STATE_COMPLETED && filter.accept(task)) {
+                helpWaiter.watch(task);
+            }
+        }
+        return helpWaiter.findHelpTask();
+    }
+
+    private static class Waiter {
+        final TaskFilter filter;
+
+        /**
+         * wait for the first completed task instead of all.
+         */
+        final boolean any;
+
+        final Thread thread = Thread.currentThread();
+
+        /**
+         * outstanding tasks accepted by the filter, guarded by the barrier.
+         */
+        int remaining;
+
+        Task completedTask;
+
+        volatile boolean done;
+
+        Waiter(TaskFilter filter, boolean any) {
+            this.filter = filter;
+            this.any = any;
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.coofee.dep;
+
+public interface TaskDurationEstimator {
+    /**
+     * treat every task as one unit of work, so the rank of a task is the length of its longest remaining path.
+     */
+    TaskDurationEstimator DEFAULT = new TaskDurationEstimator() {
+        @Override
+        public long estimateDuration(Task task) {
+            return 1;
+        }
+    };
+
+    /**
+     * @return estimated duration of the task in nanoseconds, must not be negative.
+     */
+    long estimateDuration(Task task);
+}
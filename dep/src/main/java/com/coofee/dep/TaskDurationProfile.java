@@ -0,0 +1,315 @@
+package com.coofee.dep;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * exponentially smoothed queue wait time and run time of every task, keyed by task name and persisted across runs.
+ * <p>
+ * the file is append-only: {@link #flush()} appends the changed entries on a background thread, and {@link #load(File)}
+ * replays the records so the last one of every task wins. the file is compacted when it has grown too much.
+ */
+public class TaskDurationProfile implements TaskDurationEstimator {
+    private static final String TAG = "Dep.TaskDurationProfile";
+
+    private static final int MAGIC = 0x44455001;
+
+    /**
+     * weight of the newest sample.
+     */
+    private static final double ALPHA = 0.3;
+
+    /**
+     * duration of a task which has never been recorded.
+     */
+    private static final long DEFAULT_DURATION_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    /**
+     * compact the file when it has more records than this times the task count.
+     */
+    private static final int COMPACT_FACTOR = 4;
+
+    private static final ThreadPoolExecutor WRITER;
+
+    static {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(1, 1, 3, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "Dep.Profile");
+                thread.setDaemon(true);
+                thread.setPriority(Thread.MIN_PRIORITY);
+                return thread;
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        WRITER = executor;
+    }
+
+    private final File mFile;
+
+    private final ConcurrentMap<String, Entry> mEntryMap = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean mFlushScheduled = new AtomicBoolean();
+
+    /**
+     * records in the file, only accessed by the writer thread after load.
+     */
+    private int mRecordCount;
+
+    /**
+     * the file has a bad header or a partially written record, appending to it would misalign every later record;
+     * so the next write compacts it instead. only accessed by the writer thread after load.
+     */
+    private boolean mBroken;
+
+    private TaskDurationProfile(File file) {
+        this.mFile = file;
+    }
+
+    /**
+     * load the profile from the file, a missing file results in an empty profile; a broken file keeps the records
+     * before the broken part, and is rewritten on next {@link #flush()}.
+     */
+    public static TaskDurationProfile load(File file) {
+        final TaskDurationProfile profile = new TaskDurationProfile(file);
+        if (!file.exists()) {
+            return profile;
+        }
+
+        // broken unless it ends cleanly after the header or a whole record.
+        profile.mBroken = true;
+        DataInputStream input = null;
+        try {
+            final BufferedInputStream buffered = new BufferedInputStream(new FileInputStream(file));
+            input = new DataInputStream(buffered);
+            if (input.readInt() != MAGIC) {
+                Log.e(TAG, "load; unknown profile file={}, ignore it.", file);
+                return profile;
+            }
+
+            while (true) {
+                buffered.mark(1);
+                if (buffered.read() < 0) {
+                    profile.mBroken = false;
+                    break;
+                }
+                buffered.reset();
+
+                final String name = input.readUTF();
+                final long queueWaitNanos = input.readLong();
+                final long runNanos = input.readLong();
+                final int sampleCount = input.readInt();
+                profile.mEntryMap.put(name, new Entry(queueWaitNanos, runNanos, sampleCount));
+                profile.mRecordCount++;
+            }
+        } catch (EOFException e) {
+            // a record partially written by the previous run.
+            Log.e(TAG, "load; truncated profile file={}, record count={}", file, profile.mRecordCount);
+        } catch (IOException e) {
+            Log.e(TAG, "load; fail read profile file={}", file, e);
+        } finally {
+            closeQuietly(input);
+        }
+
+        Log.d(TAG, "load; file={}, task count={}, record count={}", file, profile.mEntryMap.size(), profile.mRecordCount);
+        return profile;
+    }
+
+    @Override
+    public long estimateDuration(Task task) {
+        final Entry entry = mEntryMap.get(task.getName());
+        if (entry != null) {
+            return entry.runNanos;
+        }
+
+        return task.isSentinel() ? 0 : DEFAULT_DURATION_NANOS;
+    }
+
+    /**
+     * @return smoothed run time of the task in nanoseconds, or -1 if it has never been recorded.
+     */
+    public long getRunNanos(String taskName) {
+        final Entry entry = mEntryMap.get(taskName);
+        return entry == null ? -1 : entry.runNanos;
+    }
+
+    /**
+     * @return smoothed queue wait time of the task in nanoseconds, or -1 if it has never been recorded.
+     */
+    public long getQueueWaitNanos(String taskName) {
+        final Entry entry = mEntryMap.get(taskName);
+        return entry == null ? -1 : entry.queueWaitNanos;
+    }
+
+    /**
+     * @return names of all recorded tasks.
+     */
+    public List<String> getTaskNames() {
+        return new ArrayList<>(mEntryMap.keySet());
+    }
+
+    /**
+     * merge a sample into memory, it will be written to the file on next {@link #flush()}.
+     */
+    public void record(String taskName, long queueWaitNanos, long runNanos) {
+        Entry entry = mEntryMap.get(taskName);
+        if (entry == null) {
+            final Entry newEntry = new Entry(queueWaitNanos, runNanos, 1);
+            newEntry.dirty = true;
+            entry = mEntryMap.putIfAbsent(taskName, newEntry);
+            if (entry == null) {
+                return;
+            }
+        }
+
+        entry.merge(queueWaitNanos, runNanos);
+    }
+
+    /**
+     * append the changed entries to the file on a background thread.
+     */
+    public void flush() {
+        if (!mFlushScheduled.compareAndSet(false, true)) {
+            return;
+        }
+
+        WRITER.execute(new Runnable() {
+            @Override
+            public void run() {
+                mFlushScheduled.set(false);
+                write();
+            }
+        });
+    }
+
+    private void write() {
+        final Map<String, Entry> dirtyEntryMap = new HashMap<>();
+        for (Map.Entry<String, Entry> entry : mEntryMap.entrySet()) {
+            final Entry snapshot = entry.getValue().takeIfDirty();
+            if (snapshot != null) {
+                dirtyEntryMap.put(entry.getKey(), snapshot);
+            }
+        }
+
+        if (dirtyEntryMap.isEmpty()) {
+            return;
+        }
+
+        final boolean compact = mBroken || !mFile.exists() || mRecordCount + dirtyEntryMap.size() > COMPACT_FACTOR * mEntryMap.size();
+        if (compact) {
+            final Map<String, Entry> allEntryMap = new HashMap<>();
+            for (Map.Entry<String, Entry> entry : mEntryMap.entrySet()) {
+                allEntryMap.put(entry.getKey(), entry.getValue().snapshot());
+            }
+
+            final File tmpFile = new File(mFile.getPath() + ".tmp");
+            if (writeRecords(tmpFile, allEntryMap, false) && tmpFile.renameTo(mFile)) {
+                mRecordCount = allEntryMap.size();
+                mBroken = false;
+            } else {
+                Log.e(TAG, "write; fail compact profile file={}", mFile);
+            }
+        } else if (writeRecords(mFile, dirtyEntryMap, true)) {
+            mRecordCount += dirtyEntryMap.size();
+        }
+    }
+
+    private static boolean writeRecords(File file, Map<String, Entry> entryMap, boolean append) {
+        DataOutputStream output = null;
+        try {
+            final File parent = file.getParentFile();
+            if (parent != null && !parent.exists()) {
+                parent.mkdirs();
+            }
+
+            output = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, append)));
+            if (!append) {
+                output.writeInt(MAGIC);
+            }
+
+            for (Map.Entry<String, Entry> entry : entryMap.entrySet()) {
+                final Entry value = entry.getValue();
+                output.writeUTF(entry.getKey());
+                output.writeLong(value.queueWaitNanos);
+                output.writeLong(value.runNanos);
+                output.writeInt(value.sampleCount);
+            }
+            output.flush();
+            return true;
+        } catch (IOException e) {
+            Log.e(TAG, "writeRecords; fail write profile file={}", file, e);
+            return false;
+        } finally {
+            closeQuietly(output);
+        }
+    }
+
+    private static void closeQuietly(Closeable closeable) {
+        if (closeable == null) {
+            return;
+        }
+
+        try {
+            closeable.close();
+        } catch (IOException e) {
+            // ignore
+        }
+    }
+
+    private static class Entry {
+        volatile long queueWaitNanos;
+        volatile long runNanos;
+        int sampleCount;
+        boolean dirty;
+
+        Entry(long queueWaitNanos, long runNanos, int sampleCount) {
+            this.queueWaitNanos = queueWaitNanos;
+            this.runNanos = runNanos;
+            this.sampleCount = sampleCount;
+        }
+
+        synchronized void merge(long queueWaitNanos, long runNanos) {
+            this.queueWaitNanos = smooth(this.queueWaitNanos, queueWaitNanos);
+            this.runNanos = smooth(this.runNanos, runNanos);
+            this.sampleCount++;
+            this.dirty = true;
+        }
+
+        synchronized Entry takeIfDirty() {
+            if (!dirty) {
+                return null;
+            }
+
+            dirty = false;
+            return new Entry(queueWaitNanos, runNanos, sampleCount);
+        }
+
+        synchronized Entry snapshot() {
+            return new Entry(queueWaitNanos, runNanos, sampleCount);
+        }
+
+        private static long smooth(long oldValue, long sample) {
+            return oldValue + (long) (ALPHA * (sample - oldValue));
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.coofee.dep;
+
+import java.util.AbstractSet;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * parent or child tasks of a task, in insertion order and without duplicates.
+ * <p>
+ * tasks are kept in a growable array, so adding is amortized O(1) instead of copying like
+ * {@link java.util.concurrent.CopyOnWriteArraySet}; duplicates are found by scanning while the array is small and
+ * by an identity set once it grows. adding is synchronized, reading by {@link #size()} and {@link #get(int)} is
+ * lock-free and allocates nothing: the array is published before the size covering it.
+ */
+final class TaskEdges extends AbstractSet<Task> {
+    private static final Task[] EMPTY_TASKS = new Task[0];
+
+    /**
+     * scan for duplicates up to this size, beyond it keep an identity set.
+     */
+    private static final int INDEX_THRESHOLD = 8;
+
+    private volatile Task[] mTasks = EMPTY_TASKS;
+
+    private volatile int mSize;
+
+    /**
+     * only accessed with the lock held.
+     */
+    private Set<Task> mIndex;
+
+    /**
+     * @return true if the task is added, false if it is already there.
+     */
+    boolean addTask(Task task) {
+        return addTask(task, true);
+    }
+
+    /**
+     * @param check false if the caller knows the task is not there yet, which skips the duplicate check.
+     * @return true if the task is added, false if it is already there.
+     */
+    synchronized boolean addTask(Task task, boolean check) {
+        final int size = mSize;
+        if (mIndex != null) {
+            if (!mIndex.add(task)) {
+                return false;
+            }
+        } else if (check) {
+            final Task[] tasks = mTasks;
+            for (int i = 0; i < size; i++) {
+                if (tasks[i] == task) {
+                    return false;
+                }
+            }
+
+            if (size >= INDEX_THRESHOLD) {
+                mIndex = Collections.newSetFromMap(new IdentityHashMap<Task, Boolean>(size * 2));
+                for (int i = 0; i < size; i++) {
+                    mIndex.add(tasks[i]);
+                }
+                mIndex.add(task);
+            }
+        }
+
+        Task[] tasks = mTasks;
+        if (size == tasks.length) {
+            tasks = growTo(tasks, Math.max(4, size + (size >> 1)));
+            mTasks = tasks;
+        }
+        tasks[size] = task;
+        mSize = size + 1;
+        return true;
+    }
+
+    /**
+     * make room for count more tasks at once, when the final degree is known.
+     */
+    synchronized void ensureCapacity(int count) {
+        final int capacity = mSize + count;
+        if (capacity > mTasks.length) {
+            mTasks = growTo(mTasks, capacity);
+        }
+    }
+
+    private static Task[] growTo(Task[] tasks, int capacity) {
+        final Task[] newTasks = new Task[capacity];
+        System.arraycopy(tasks, 0, newTasks, 0, tasks.length);
+        return newTasks;
+    }
+
+    /**
+     * @param index less than a {@link #size()} read before.
+     */
+    Task get(int index) {
+        return mTasks[index];
+    }
+
+    @Override
+    public int size() {
+        return mSize;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        final int size = mSize;
+        final Task[] tasks = mTasks;
+        for (int i = 0; i < size; i++) {
+            if (tasks[i] == o) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public boolean add(Task task) {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public Iterator<Task> iterator() {
+        final int size = mSize;
+        final Task[] tasks = mTasks;
+        return new Iterator<Task>() {
+            private int mIndex;
+
+            @Override
+            public boolean hasNext() {
+                return mIndex < size;
+            }
+
+            @Override
+            public Task next() {
+                if (mIndex >= size) {
+                    throw new NoSuchElementException();
+                }
+                return tasks[mIndex++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,27 @@
+package com.coofee.dep;
+
+/**
+ * implemented by a {@link TaskExecutor} to report how saturated it is, for telling tasks waiting for threads
+ * from slow tasks. see {@link TaskMetrics}.
+ */
+public interface TaskExecutorStats {
+    /**
+     * the executor cannot tell the value.
+     */
+    int UNKNOWN = -1;
+
+    /**
+     * @return count of tasks of the thread mode waiting in the queue of the executor.
+     */
+    int getQueueDepth(@Task.ThreadMode int threadMode);
+
+    /**
+     * @return count of threads running tasks of the thread mode.
+     */
+    int getActiveThreadCount(@Task.ThreadMode int threadMode);
+
+    /**
+     * @return count of tasks of the thread mode rejected by the executor, a rejected task is never executed.
+     */
+    long getRejectedCount(@Task.ThreadMode int threadMode);
+}
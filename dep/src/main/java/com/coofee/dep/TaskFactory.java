@@ -15,4 +15,13 @@ public class TaskFactory {
         return new Task<>(name, callable, threadMode);
     }
 
+    /**
+     * @param priority see {@link Task#setPriority(int)}.
+     */
+    public static <V> Task<V> from(String name, Callable<V> callable, @Task.ThreadMode int threadMode, int priority) {
+        final Task<V> task = new Task<>(name, callable, threadMode);
+        task.setPriority(priority);
+        return task;
+    }
+
 }
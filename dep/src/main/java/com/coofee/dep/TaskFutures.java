@@ -0,0 +1,71 @@
+package com.coofee.dep;
+
+import androidx.annotation.RequiresApi;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * compose the completion of tasks without blocking threads.
+ */
+public final class TaskFutures {
+
+    private TaskFutures() {
+    }
+
+    /**
+     * run the callback once all tasks are completed, whether they succeed or fail.
+     * the callback runs on the thread completing the last task, or directly if all tasks are already completed.
+     */
+    public static void whenAllComplete(Collection<? extends Task<?>> tasks, final Runnable callback) {
+        if (tasks.isEmpty()) {
+            callback.run();
+            return;
+        }
+
+        final AtomicInteger remainingCount = new AtomicInteger(tasks.size());
+        final TaskResultCallback resultCallback = new TaskResultCallback() {
+            @Override
+            public void onTaskResult(TaskResult taskResult) {
+                if (remainingCount.decrementAndGet() == 0) {
+                    callback.run();
+                }
+            }
+        };
+
+        for (Task task : tasks) {
+            task.whenComplete(resultCallback);
+        }
+    }
+
+    public static void whenAllComplete(Runnable callback, Task<?>... tasks) {
+        whenAllComplete(Arrays.asList(tasks), callback);
+    }
+
+    /**
+     * @return a future completed when all tasks are completed, completed exceptionally if any task fails.
+     */
+    @RequiresApi(24)
+    public static CompletableFuture<Void> allOf(Task<?>... tasks) {
+        return CompletableFuture.allOf(toCompletableFutures(tasks));
+    }
+
+    /**
+     * @return a future completed with the result, or the error, of the first completed task.
+     */
+    @RequiresApi(24)
+    public static CompletableFuture<Object> anyOf(Task<?>... tasks) {
+        return CompletableFuture.anyOf(toCompletableFutures(tasks));
+    }
+
+    @RequiresApi(24)
+    private static CompletableFuture<?>[] toCompletableFutures(Task<?>[] tasks) {
+        final CompletableFuture<?>[] futures = new CompletableFuture<?>[tasks.length];
+        for (int i = 0; i < tasks.length; i++) {
+            futures[i] = tasks[i].toCompletableFuture();
+        }
+        return futures;
+    }
+}
@@ -1,13 +1,497 @@
 package com.coofee.dep;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
 public class TaskGraph {
+    private static final String TAG = "Dep.TaskGraph";
+
+    /**
+     * graphs with more tasks than this use the level width, a lower bound of the max parallel task count,
+     * instead of the exact one which needs the transitive closure of the graph, about O(V * E + V^3 / 64) time
+     * and V^2 bits. only reports compute it, execution sizes the pool by the level width.
+     */
+    private static final int MAX_EXACT_TASK_COUNT = 4096;
+
+    /**
+     * count of targets whose reachability is computed in one pass of {@link #findTransitiveEdges}, which bounds
+     * its memory to taskCount * TRANSITIVE_BLOCK_SIZE bits.
+     */
+    private static final int TRANSITIVE_BLOCK_SIZE = 512;
+
+    private static final TaskFilter ASYNC_TASK_FILTER = new TaskFilter() {
+        @Override
+        public boolean accept(Task task) {
+            return task.getThreadMode() == Task.THREAD_MODE_ASYNC;
+        }
+    };
+
     public static int estimateMaxParallelTaskCount(Task task) {
-        // TODO estimate max parallel task count
-        return 1;
+        return estimateMaxParallelTaskCount(task, null);
+    }
+
+    /**
+     * estimate the max count of tasks accepted by the filter which may execute at the same time,
+     * that is the width of the graph: the largest set of tasks in which no task depends on another one.
+     * root/end task of task sets are never counted, tasks not accepted by the filter still keep the dependencies.
+     */
+    public static int estimateMaxParallelTaskCount(Task task, TaskFilter filter) {
+        return estimateMaxParallelTaskCount(task, filter, true);
+    }
+
+    /**
+     * @param exact false to always use the level width, which is O(V + E).
+     */
+    private static int estimateMaxParallelTaskCount(Task task, TaskFilter filter, boolean exact) {
+        if (task == null) {
+            return 0;
+        }
+
+        final List<Task> sortedTasks = topologicalSort(task);
+        final int taskCount = sortedTasks.size();
+        final Map<Task, Integer> indexMap = new IdentityHashMap<>(taskCount);
+        final int[] candidateIndex = new int[taskCount];
+        int candidateCount = 0;
+        for (int i = 0; i < taskCount; i++) {
+            final Task current = sortedTasks.get(i);
+            indexMap.put(current, i);
+            if (!current.isSentinel() && (filter == null || filter.accept(current))) {
+                candidateIndex[i] = candidateCount++;
+            } else {
+                candidateIndex[i] = -1;
+            }
+        }
+
+        if (candidateCount <= 1) {
+            return candidateCount;
+        }
+
+        if (!exact || taskCount > MAX_EXACT_TASK_COUNT) {
+            return levelWidth(sortedTasks, indexMap, candidateIndex);
+        }
+
+        // reach[i] is the set of candidates reachable from task i.
+        final int words = (candidateCount + 63) >>> 6;
+        final long[][] reach = new long[taskCount][];
+        for (int i = taskCount - 1; i >= 0; i--) {
+            final long[] current = new long[words];
+            for (Object child : sortedTasks.get(i).getChildTasks()) {
+                final Integer childIndex = indexMap.get(child);
+                if (childIndex == null) {
+                    // child on a cycle.
+                    continue;
+                }
+
+                final long[] childReach = reach[childIndex];
+                for (int w = 0; w < words; w++) {
+                    current[w] |= childReach[w];
+                }
+
+                final int childCandidate = candidateIndex[childIndex];
+                if (childCandidate >= 0) {
+                    current[childCandidate >>> 6] |= 1L << childCandidate;
+                }
+            }
+            reach[i] = current;
+        }
+
+        final long[][] candidateReach = new long[candidateCount][];
+        for (int i = 0; i < taskCount; i++) {
+            if (candidateIndex[i] >= 0) {
+                candidateReach[candidateIndex[i]] = reach[i];
+            }
+        }
+
+        // dilworth: max antichain = task count - max matching of the comparability bipartite graph.
+        return candidateCount - maxMatching(candidateReach, candidateCount);
     }
 
+    /**
+     * estimate the async pool size for the graph: the level width of its async tasks,
+     * not less than 1 and not more than maxPoolSize. it runs when the graph is executed, usually on the main thread
+     * at startup, so it does not compute the exact width.
+     */
+    public static int estimatePoolSize(Task task, int maxPoolSize) {
+        final int count = estimateMaxParallelTaskCount(task, ASYNC_TASK_FILTER, false);
+        return Math.max(1, Math.min(count, maxPoolSize));
+    }
+
+    /**
+     * tasks with the same longest distance from the head task never depend on each other, neither do tasks with
+     * the same longest distance to the tail task; so the largest level of either is a lower bound of the width.
+     * root/end task of task sets do not count in the distance, so nesting does not shift the tasks of a task set.
+     */
+    private static int levelWidth(List<Task> sortedTasks, Map<Task, Integer> indexMap, int[] candidateIndex) {
+        final int taskCount = sortedTasks.size();
+        final int[] level = new int[taskCount];
+        final int[] levelCount = new int[taskCount];
+        int maxWidth = 0;
+        for (int i = 0; i < taskCount; i++) {
+            if (candidateIndex[i] >= 0) {
+                maxWidth = Math.max(maxWidth, ++levelCount[level[i]]);
+            }
+
+            final Task task = sortedTasks.get(i);
+            final int childLevel = level[i] + (task.isSentinel() ? 0 : 1);
+            for (Object child : task.getChildTasks()) {
+                final Integer childIndex = indexMap.get(child);
+                if (childIndex == null) {
+                    continue;
+                }
+                level[childIndex] = Math.max(level[childIndex], childLevel);
+            }
+        }
+
+        // distance to the tail task, children come later in topological order.
+        Arrays.fill(level, 0);
+        Arrays.fill(levelCount, 0);
+        for (int i = taskCount - 1; i >= 0; i--) {
+            for (Object child : sortedTasks.get(i).getChildTasks()) {
+                final Integer childIndex = indexMap.get(child);
+                if (childIndex == null) {
+                    continue;
+                }
+                level[i] = Math.max(level[i], level[childIndex] + (((Task) child).isSentinel() ? 0 : 1));
+            }
+
+            if (candidateIndex[i] >= 0) {
+                maxWidth = Math.max(maxWidth, ++levelCount[level[i]]);
+            }
+        }
+        return maxWidth;
+    }
+
+    private static int maxMatching(long[][] reach, int count) {
+        final int[] matchOfRight = new int[count];
+        final boolean[] matchedLeft = new boolean[count];
+        Arrays.fill(matchOfRight, -1);
+
+        int matching = 0;
+        // greedy matching first, every chain of the graph is matched without augmenting.
+        for (int left = 0; left < count; left++) {
+            final long[] row = reach[left];
+            for (int right = nextSetBit(row, 0); right >= 0; right = nextSetBit(row, right + 1)) {
+                if (matchOfRight[right] < 0) {
+                    matchOfRight[right] = left;
+                    matchedLeft[left] = true;
+                    matching++;
+                    break;
+                }
+            }
+        }
+
+        final int[] visited = new int[count];
+        int stamp = 0;
+        for (int left = 0; left < count; left++) {
+            if (!matchedLeft[left] && augment(left, reach, matchOfRight, visited, ++stamp)) {
+                matchedLeft[left] = true;
+                matching++;
+            }
+        }
+        return matching;
+    }
+
+    private static boolean augment(int left, long[][] reach, int[] matchOfRight, int[] visited, int stamp) {
+        final long[] row = reach[left];
+        for (int right = nextSetBit(row, 0); right >= 0; right = nextSetBit(row, right + 1)) {
+            if (visited[right] == stamp) {
+                continue;
+            }
+            visited[right] = stamp;
+
+            if (matchOfRight[right] < 0 || augment(matchOfRight[right], reach, matchOfRight, visited, stamp)) {
+                matchOfRight[right] = left;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int nextSetBit(long[] words, int fromIndex) {
+        int w = fromIndex >>> 6;
+        if (w >= words.length) {
+            return -1;
+        }
+
+        long word = words[w] & (-1L << fromIndex);
+        while (true) {
+            if (word != 0) {
+                return (w << 6) + Long.numberOfTrailingZeros(word);
+            }
+            if (++w == words.length) {
+                return -1;
+            }
+            word = words[w];
+        }
+    }
+
+    /**
+     * order the nodes of a graph given as edges of node indexes.
+     *
+     * @param edges      parent index << 32 | child index.
+     * @param outOffsets filled with the offset of the child edges of every node into outEdges, size nodeCount + 1.
+     * @param outEdges   filled with the index into edges of the child edges of every node, size edgeCount.
+     * @return node indexes in topological order, shorter than nodeCount if the graph has a cycle.
+     */
+    private static int[] topologicalOrder(int nodeCount, long[] edges, int edgeCount, int[] outOffsets, int[] outEdges) {
+        final int[] inDegrees = new int[nodeCount];
+        for (int i = 0; i < edgeCount; i++) {
+            outOffsets[parentOf(edges[i]) + 1]++;
+            inDegrees[childOf(edges[i])]++;
+        }
+        for (int i = 0; i < nodeCount; i++) {
+            outOffsets[i + 1] += outOffsets[i];
+        }
+        final int[] positions = Arrays.copyOf(outOffsets, nodeCount);
+        for (int i = 0; i < edgeCount; i++) {
+            outEdges[positions[parentOf(edges[i])]++] = i;
+        }
+
+        final int[] order = new int[nodeCount];
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < nodeCount; i++) {
+            if (inDegrees[i] == 0) {
+                order[tail++] = i;
+            }
+        }
+        while (head < tail) {
+            final int node = order[head++];
+            for (int i = outOffsets[node]; i < outOffsets[node + 1]; i++) {
+                final int child = childOf(edges[outEdges[i]]);
+                if (--inDegrees[child] == 0) {
+                    order[tail++] = child;
+                }
+            }
+        }
+        return tail == nodeCount ? order : Arrays.copyOf(order, tail);
+    }
+
+    private static int parentOf(long edge) {
+        return (int) (edge >>> 32);
+    }
+
+    private static int childOf(long edge) {
+        return (int) edge;
+    }
+
+    /**
+     * @param edges parent index << 32 | child index.
+     * @return node indexes of a cycle in path order, the last node goes back to the first one; null if none.
+     */
+    static int[] findCycle(int nodeCount, long[] edges, int edgeCount) {
+        final int[] outOffsets = new int[nodeCount + 1];
+        final int[] outEdges = new int[edgeCount];
+        final int[] order = topologicalOrder(nodeCount, edges, edgeCount, outOffsets, outEdges);
+        if (order.length == nodeCount) {
+            return null;
+        }
+
+        // every node left by the sort has a parent left too, walk back through them until a node repeats.
+        final boolean[] sorted = new boolean[nodeCount];
+        for (int node : order) {
+            sorted[node] = true;
+        }
+        final int[] parents = new int[nodeCount];
+        Arrays.fill(parents, -1);
+        for (int i = 0; i < edgeCount; i++) {
+            final int parent = parentOf(edges[i]);
+            if (!sorted[parent]) {
+                parents[childOf(edges[i])] = parent;
+            }
+        }
+
+        int start = 0;
+        while (sorted[start]) {
+            start++;
+        }
+        final int[] steps = new int[nodeCount];
+        Arrays.fill(steps, -1);
+        int step = 0;
+        int node = start;
+        while (steps[node] < 0) {
+            steps[node] = step++;
+            node = parents[node];
+        }
+
+        // node is on the cycle, walk back once more around it and reverse to path order.
+        final int length = step - steps[node];
+        final int[] cycle = new int[length];
+        for (int i = length - 1; i >= 0; i--) {
+            cycle[i] = node;
+            node = parents[node];
+        }
+        return cycle;
+    }
+
+    /**
+     * find the edges implied by other paths, that is the edges dropped by a transitive reduction of the graph.
+     * reachability is computed for {@link #TRANSITIVE_BLOCK_SIZE} targets at a time, so it takes
+     * O(nodeCount / TRANSITIVE_BLOCK_SIZE * edgeCount) word operations and little memory.
+     *
+     * @param edges parent index << 32 | child index, without duplicates.
+     * @return for every edge, true if it is implied by another path; null if the graph has a cycle.
+     */
+    static boolean[] findTransitiveEdges(int nodeCount, long[] edges, int edgeCount) {
+        final int[] outOffsets = new int[nodeCount + 1];
+        final int[] outEdges = new int[edgeCount];
+        final int[] order = topologicalOrder(nodeCount, edges, edgeCount, outOffsets, outEdges);
+        if (order.length != nodeCount) {
+            return null;
+        }
+
+        final int[] positions = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            positions[order[i]] = i;
+        }
+
+        final boolean[] transitive = new boolean[edgeCount];
+        final int words = TRANSITIVE_BLOCK_SIZE >>> 6;
+        final long[] accumulator = new long[words];
+        for (int blockStart = 0; blockStart < nodeCount; blockStart += TRANSITIVE_BLOCK_SIZE) {
+            // descendants[p] is the set of descendants of the node at position p, among the targets of the block.
+            // a node only has descendants after it, so nodes after the block have none there.
+            final int blockEnd = Math.min(nodeCount, blockStart + TRANSITIVE_BLOCK_SIZE);
+            final long[] descendants = new long[blockEnd * words];
+            for (int p = blockEnd - 1; p >= 0; p--) {
+                final int node = order[p];
+                Arrays.fill(accumulator, 0);
+                for (int i = outOffsets[node]; i < outOffsets[node + 1]; i++) {
+                    final int childPosition = positions[childOf(edges[outEdges[i]])];
+                    if (childPosition < blockEnd) {
+                        for (int w = 0, offset = childPosition * words; w < words; w++) {
+                            accumulator[w] |= descendants[offset + w];
+                        }
+                    }
+                }
+
+                final int offset = p * words;
+                for (int i = outOffsets[node]; i < outOffsets[node + 1]; i++) {
+                    final int target = positions[childOf(edges[outEdges[i]])] - blockStart;
+                    if (target < 0 || target >= TRANSITIVE_BLOCK_SIZE) {
+                        continue;
+                    }
+
+                    // reached through another child.
+                    if ((accumulator[target >>> 6] & (1L << target)) != 0) {
+                        transitive[outEdges[i]] = true;
+                    }
+                    descendants[offset + (target >>> 6)] |= 1L << target;
+                }
+                for (int w = 0; w < words; w++) {
+                    descendants[offset + w] |= accumulator[w];
+                }
+            }
+        }
+        return transitive;
+    }
+
+    /**
+     * log the report of the graph with durations by {@link TaskManager#getDurationEstimator()}.
+     */
     public static void printGraph(Task task) {
-        // TODO print task graph
+        final TaskManager taskManager = TaskManager.getInstance();
+        printGraph(task, taskManager == null ? TaskDurationEstimator.DEFAULT : taskManager.getDurationEstimator());
+    }
+
+    /**
+     * log the report of the graph as text and graphviz dot, annotated with the duration and slack of every task,
+     * the critical path and the ui tasks on it.
+     *
+     * @param estimator measured durations such as a {@link TaskDurationProfile}, or estimated ones.
+     * @return the report, also usable without debug log, e.g. to check the critical ui tasks in a test.
+     */
+    public static TaskGraphReport printGraph(Task task, TaskDurationEstimator estimator) {
+        final TaskGraphReport report = new TaskGraphReport(task, estimator == null ? TaskDurationEstimator.DEFAULT : estimator);
+        if (Log.sDebug) {
+            Log.d(TAG, "printGraph;\n{}\n{}", report.toText(), report.toDot());
+        }
+        return report;
+    }
+
+    /**
+     * compute the rank of every task reachable from the task, the rank is the longest remaining path
+     * from the task to the end of the graph weighted by the estimated duration, including the task itself.
+     *
+     * @return the rank of the task.
+     */
+    public static long computeCriticalPath(Task task, TaskDurationEstimator estimator) {
+        if (task == null) {
+            return 0;
+        }
+
+        if (estimator == null) {
+            estimator = TaskDurationEstimator.DEFAULT;
+        }
+
+        final List<Task> sortedTasks = topologicalSort(task);
+        final Map<Task, Long> rankMap = new IdentityHashMap<>(sortedTasks.size());
+        for (int i = sortedTasks.size() - 1; i >= 0; i--) {
+            final Task current = sortedTasks.get(i);
+
+            long maxChildRank = 0;
+            for (Object child : current.getChildTasks()) {
+                final Long childRank = rankMap.get(child);
+                if (childRank != null && childRank > maxChildRank) {
+                    maxChildRank = childRank;
+                }
+            }
+
+            final long rank = Math.max(0, estimator.estimateDuration(current)) + maxChildRank;
+            rankMap.put(current, rank);
+            current.setRank(rank);
+        }
+
+        final Long rank = rankMap.get(task.headTask());
+        return rank == null ? 0 : rank;
     }
 
+    /**
+     * @return all tasks reachable from the task in topological order, task set is expanded to its root/end task
+     * and nested tasks. tasks on a cycle are not reachable by definition and will be dropped.
+     */
+    static List<Task> topologicalSort(Task task) {
+        final Task head = task.headTask();
+
+        // collect reachable tasks and count in-degree inside the reachable graph.
+        final Map<Task, int[]> inDegreeMap = new IdentityHashMap<>();
+        final ArrayDeque<Task> stack = new ArrayDeque<>();
+        inDegreeMap.put(head, new int[1]);
+        stack.push(head);
+        while (!stack.isEmpty()) {
+            final Task current = stack.pop();
+            for (Object object : current.getChildTasks()) {
+                final Task child = (Task) object;
+                int[] inDegree = inDegreeMap.get(child);
+                if (inDegree == null) {
+                    inDegree = new int[1];
+                    inDegreeMap.put(child, inDegree);
+                    stack.push(child);
+                }
+                inDegree[0]++;
+            }
+        }
+
+        final List<Task> sortedTasks = new ArrayList<>(inDegreeMap.size());
+        final ArrayDeque<Task> readyTasks = new ArrayDeque<>();
+        if (inDegreeMap.get(head)[0] == 0) {
+            readyTasks.add(head);
+        }
+        while (!readyTasks.isEmpty()) {
+            final Task current = readyTasks.poll();
+            sortedTasks.add(current);
+            for (Object object : current.getChildTasks()) {
+                final int[] inDegree = inDegreeMap.get(object);
+                if (--inDegree[0] == 0) {
+                    readyTasks.add((Task) object);
+                }
+            }
+        }
+
+        return sortedTasks;
+    }
 }
@@ -0,0 +1,316 @@
+package com.coofee.dep;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * duration, earliest start and slack of every task of a graph, rendered as text or graphviz dot by
+ * {@link TaskGraph#printGraph(Task, TaskDurationEstimator)}.
+ * <p>
+ * slack is how much a task can be delayed without delaying the end of the graph, assuming enough threads. tasks
+ * without slack are on the critical path, making any of them shorter makes the whole graph shorter; ui tasks among
+ * them block the main thread for the whole graph and should be optimized or moved off the main thread first.
+ */
+public class TaskGraphReport {
+
+    private final String mName;
+
+    private final List<Task> mSortedTasks;
+
+    private final Map<Task, Integer> mIndexMap;
+
+    private final int[] mChildOffsets;
+
+    private final int[] mChildIndexes;
+
+    private final long[] mDurations;
+
+    private final long[] mEarliestStarts;
+
+    private final long[] mSlacks;
+
+    private final long mCriticalPathNanos;
+
+    TaskGraphReport(Task task, TaskDurationEstimator estimator) {
+        this.mName = task.getName();
+        this.mSortedTasks = TaskGraph.topologicalSort(task);
+        final int taskCount = mSortedTasks.size();
+        this.mIndexMap = new IdentityHashMap<>(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            mIndexMap.put(mSortedTasks.get(i), i);
+        }
+
+        this.mDurations = new long[taskCount];
+        this.mChildOffsets = new int[taskCount + 1];
+        int[] childIndexes = new int[taskCount];
+        for (int i = 0; i < taskCount; i++) {
+            final Task current = mSortedTasks.get(i);
+            mDurations[i] = (current.isSentinel() ? 0 : Math.max(0, estimator.estimateDuration(current)));
+
+            final TaskEdges children = current.getChildTasks();
+            final int childCount = children.size();
+            int offset = mChildOffsets[i];
+            if (offset + childCount > childIndexes.length) {
+                childIndexes = Arrays.copyOf(childIndexes, Math.max(childIndexes.length * 2, offset + childCount));
+            }
+            for (int c = 0; c < childCount; c++) {
+                final Integer childIndex = mIndexMap.get(children.get(c));
+                if (childIndex != null) {
+                    childIndexes[offset++] = childIndex;
+                }
+            }
+            mChildOffsets[i + 1] = offset;
+        }
+        this.mChildIndexes = childIndexes;
+
+        // forward pass for the earliest start, backward pass for the latest start.
+        this.mEarliestStarts = new long[taskCount];
+        long criticalPathNanos = 0;
+        for (int i = 0; i < taskCount; i++) {
+            final long earliestEnd = mEarliestStarts[i] + mDurations[i];
+            criticalPathNanos = Math.max(criticalPathNanos, earliestEnd);
+            for (int c = mChildOffsets[i]; c < mChildOffsets[i + 1]; c++) {
+                final int child = mChildIndexes[c];
+                mEarliestStarts[child] = Math.max(mEarliestStarts[child], earliestEnd);
+            }
+        }
+        this.mCriticalPathNanos = criticalPathNanos;
+
+        final long[] latestStarts = new long[taskCount];
+        this.mSlacks = new long[taskCount];
+        for (int i = taskCount - 1; i >= 0; i--) {
+            long latestEnd = criticalPathNanos;
+            for (int c = mChildOffsets[i]; c < mChildOffsets[i + 1]; c++) {
+                latestEnd = Math.min(latestEnd, latestStarts[mChildIndexes[c]]);
+            }
+            latestStarts[i] = latestEnd - mDurations[i];
+            mSlacks[i] = latestStarts[i] - mEarliestStarts[i];
+        }
+    }
+
+    /**
+     * @return duration of the longest path, the shortest possible duration of the graph.
+     */
+    public long getCriticalPathNanos() {
+        return mCriticalPathNanos;
+    }
+
+    /**
+     * @return estimated duration of the task, -1 if it is not part of the graph.
+     */
+    public long getDurationNanos(Task task) {
+        final Integer index = mIndexMap.get(task);
+        return index == null ? -1 : mDurations[index];
+    }
+
+    /**
+     * @return earliest time the task can start after the graph is started, -1 if it is not part of the graph.
+     */
+    public long getEarliestStartNanos(Task task) {
+        final Integer index = mIndexMap.get(task);
+        return index == null ? -1 : mEarliestStarts[index];
+    }
+
+    /**
+     * @return how much the task can be delayed without delaying the graph, -1 if it is not part of the graph.
+     */
+    public long getSlackNanos(Task task) {
+        final Integer index = mIndexMap.get(task);
+        return index == null ? -1 : mSlacks[index];
+    }
+
+    /**
+     * @return tasks without slack in topological order, without root and end tasks of task sets.
+     */
+    public List<Task> getCriticalTasks() {
+        final List<Task> criticalTasks = new ArrayList<>();
+        for (int i = 0; i < mSortedTasks.size(); i++) {
+            if (isCritical(i)) {
+                criticalTasks.add(mSortedTasks.get(i));
+            }
+        }
+        return Collections.unmodifiableList(criticalTasks);
+    }
+
+    /**
+     * @return tasks without slack which block or are enqueued to the ui thread, in topological order.
+     */
+    public List<Task> getCriticalUiTasks() {
+        final List<Task> criticalUiTasks = new ArrayList<>();
+        for (int i = 0; i < mSortedTasks.size(); i++) {
+            if (isCriticalUiTask(i)) {
+                criticalUiTasks.add(mSortedTasks.get(i));
+            }
+        }
+        return Collections.unmodifiableList(criticalUiTasks);
+    }
+
+    private boolean isCritical(int index) {
+        return mSlacks[index] == 0 && !mSortedTasks.get(index).isSentinel();
+    }
+
+    private boolean isCriticalUiTask(int index) {
+        final int threadMode = mSortedTasks.get(index).getThreadMode();
+        return isCritical(index) && (threadMode == Task.THREAD_MODE_UI_BLOCK || threadMode == Task.THREAD_MODE_UI_ENQUEUE);
+    }
+
+    /**
+     * an edge is critical if both tasks are and the child can start right when the parent ends.
+     */
+    private boolean isCriticalEdge(int parent, int child) {
+        return mSlacks[parent] == 0 && mSlacks[child] == 0
+                && mEarliestStarts[parent] + mDurations[parent] == mEarliestStarts[child];
+    }
+
+    /**
+     * @return one line per task in topological order, critical tasks are marked by '*' and ui tasks on the critical
+     * path are listed at the end. root and end tasks of task sets are left out, edges through them are followed.
+     */
+    public String toText() {
+        final StringBuilder builder = new StringBuilder()
+                .append("graph=").append(mName)
+                .append(", criticalPathUs=").append(toMicros(mCriticalPathNanos)).append('\n');
+        final int taskCount = mSortedTasks.size();
+        final int[] visitStamps = new int[taskCount];
+        for (int i = 0; i < taskCount; i++) {
+            final Task task = mSortedTasks.get(i);
+            if (task.isSentinel()) {
+                continue;
+            }
+
+            builder.append(isCritical(i) ? "* " : "  ").append(task.getName())
+                    .append(" [").append(threadModeName(task.getThreadMode())).append(']')
+                    .append(" durationUs=").append(toMicros(mDurations[i]))
+                    .append(", startUs=").append(toMicros(mEarliestStarts[i]))
+                    .append(", slackUs=").append(toMicros(mSlacks[i]));
+            final List<Integer> children = nearestChildren(i, visitStamps);
+            for (int c = 0; c < children.size(); c++) {
+                builder.append(c == 0 ? " -> " : ", ").append(mSortedTasks.get(children.get(c)).getName());
+            }
+            builder.append('\n');
+        }
+
+        builder.append("critical ui tasks=[");
+        boolean first = true;
+        for (int i = 0; i < taskCount; i++) {
+            if (isCriticalUiTask(i)) {
+                builder.append(first ? "" : ", ").append(mSortedTasks.get(i).getName());
+                first = false;
+            }
+        }
+        return builder.append(']').toString();
+    }
+
+    /**
+     * @param visitStamps index + 1 of the last task whose children visited every task.
+     * @return children of the task, skipping root and end tasks of task sets.
+     */
+    private List<Integer> nearestChildren(int index, int[] visitStamps) {
+        final List<Integer> children = new ArrayList<>();
+        final ArrayDeque<Integer> stack = new ArrayDeque<>();
+        for (int c = mChildOffsets[index + 1] - 1; c >= mChildOffsets[index]; c--) {
+            stack.push(mChildIndexes[c]);
+        }
+        while (!stack.isEmpty()) {
+            final int child = stack.pop();
+            if (visitStamps[child] == index + 1) {
+                continue;
+            }
+            visitStamps[child] = index + 1;
+            if (!mSortedTasks.get(child).isSentinel()) {
+                children.add(child);
+                continue;
+            }
+            for (int c = mChildOffsets[child + 1] - 1; c >= mChildOffsets[child]; c--) {
+                stack.push(mChildIndexes[c]);
+            }
+        }
+        return children;
+    }
+
+    /**
+     * @return graphviz dot of the graph, critical tasks and edges are red and ui tasks on the critical path are filled.
+     * root and end tasks of task sets are drawn as points.
+     */
+    public String toDot() {
+        final StringBuilder builder = new StringBuilder()
+                .append("digraph ").append(quote(escape(mName))).append(" {\n")
+                .append("  rankdir=LR;\n")
+                .append("  node [shape=box, fontsize=10];\n");
+        final int taskCount = mSortedTasks.size();
+        for (int i = 0; i < taskCount; i++) {
+            final Task task = mSortedTasks.get(i);
+            builder.append("  n").append(i);
+            if (task.isSentinel()) {
+                builder.append(" [shape=point, xlabel=").append(quote(escape(task.getName()))).append("];\n");
+                continue;
+            }
+
+            builder.append(" [label=").append(quote(escape(task.getName()) + "\\n"
+                    + threadModeName(task.getThreadMode()) + " " + toMicros(mDurations[i]) + "us\\n"
+                    + "slack " + toMicros(mSlacks[i]) + "us"));
+            if (isCritical(i)) {
+                builder.append(", color=red, penwidth=2");
+            }
+            if (isCriticalUiTask(i)) {
+                builder.append(", style=filled, fillcolor=\"#ffd0d0\"");
+            }
+            builder.append("];\n");
+        }
+
+        for (int i = 0; i < taskCount; i++) {
+            for (int c = mChildOffsets[i]; c < mChildOffsets[i + 1]; c++) {
+                final int child = mChildIndexes[c];
+                builder.append("  n").append(i).append(" -> n").append(child);
+                if (isCriticalEdge(i, child)) {
+                    builder.append(" [color=red, penwidth=2]");
+                }
+                builder.append(";\n");
+            }
+        }
+        return builder.append("}\n").toString();
+    }
+
+    @Override
+    public String toString() {
+        return toText();
+    }
+
+    private static long toMicros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    private static String quote(String escapedText) {
+        return '"' + escapedText + '"';
+    }
+
+    /**
+     * escape a task name for a quoted dot id or label.
+     */
+    private static String escape(String text) {
+        return text.replace("\\", "\\\\").replace("\"", "\\\"");
+    }
+
+    static String threadModeName(int threadMode) {
+        switch (threadMode) {
+            case Task.THREAD_MODE_UI_BLOCK:
+                return "UI_BLOCK";
+            case Task.THREAD_MODE_UI_ENQUEUE:
+                return "UI_ENQUEUE";
+            case Task.THREAD_MODE_UI_IDLE:
+                return "UI_IDLE";
+            case Task.THREAD_MODE_ASYNC:
+                return "ASYNC";
+            case Task.THREAD_MODE_IO:
+                return "IO";
+            default:
+                return String.valueOf(threadMode);
+        }
+    }
+}
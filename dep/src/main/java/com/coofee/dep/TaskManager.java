@@ -1,11 +1,16 @@
 package com.coofee.dep;
 
 import androidx.annotation.IntDef;
+import androidx.annotation.RequiresApi;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class TaskManager {
     private static final String TAG = "Dep.TaskManager";
@@ -22,10 +27,19 @@ public class TaskManager {
     private static volatile TaskManager sTaskManager;
 
     public static void init(TaskExecutor taskExecutor) {
+        init(taskExecutor, null);
+    }
+
+    /**
+     * @param profileFile file to load the duration profile of the previous runs from and to record this run into,
+     *                    null to disable the duration profile.
+     */
+    public static void init(TaskExecutor taskExecutor, File profileFile) {
         if (sTaskManager == null) {
             synchronized (TaskExecutor.class) {
                 if (sTaskManager == null) {
-                    sTaskManager = new TaskManager(taskExecutor);
+                    final TaskDurationProfile profile = (profileFile == null ? null : TaskDurationProfile.load(profileFile));
+                    sTaskManager = new TaskManager(taskExecutor, profile);
                 }
             }
         }
@@ -37,38 +51,188 @@ public class TaskManager {
 
     private final TaskExecutor mTaskExecutor;
 
+    private final TaskDurationProfile mDurationProfile;
+
     private final Map<String, Task> mTaskMap = new ConcurrentHashMap<>();
 
+    /**
+     * name of every registered task, including the tasks of task sets, to the task.
+     * updated under its own lock on registration, read without lock by {@link #getTask(String)}.
+     */
+    private final Map<String, Task> mTaskIndex = new ConcurrentHashMap<>();
+
     private final Map<TaskCondition, List<Task>> mConditionTaskMap = new ConcurrentHashMap<>();
 
+    /**
+     * tasks of {@link #mTaskMap} not completed yet.
+     */
+    private final TaskCompletionBarrier mCompletionBarrier = new TaskCompletionBarrier();
+
+    private volatile TraceRecorder mTraceRecorder;
+
+    private volatile TaskMetrics mTaskMetrics;
+
     public TaskManager(TaskExecutor mTaskExecutor) {
+        this(mTaskExecutor, null);
+    }
+
+    public TaskManager(TaskExecutor mTaskExecutor, TaskDurationProfile durationProfile) {
         this.mTaskExecutor = mTaskExecutor;
+        this.mDurationProfile = durationProfile;
     }
 
     public TaskExecutor getTaskExecutor() {
         return mTaskExecutor;
     }
 
+    /**
+     * @return the duration profile loaded at {@link #init(TaskExecutor, File)}, or null.
+     */
+    public TaskDurationProfile getDurationProfile() {
+        return mDurationProfile;
+    }
+
+    /**
+     * @return the duration profile if any, otherwise {@link TaskDurationEstimator#DEFAULT}.
+     */
+    public TaskDurationEstimator getDurationEstimator() {
+        return mDurationProfile == null ? TaskDurationEstimator.DEFAULT : mDurationProfile;
+    }
+
+    /**
+     * @return the recorder of task events, or null.
+     */
+    public TraceRecorder getTraceRecorder() {
+        return mTraceRecorder;
+    }
+
+    /**
+     * record enqueue/start/end events of every task, null to stop recording.
+     */
+    public void setTraceRecorder(TraceRecorder traceRecorder) {
+        this.mTraceRecorder = traceRecorder;
+    }
+
+    /**
+     * @return the metrics of completed tasks, or null.
+     */
+    public TaskMetrics getTaskMetrics() {
+        return mTaskMetrics;
+    }
+
+    /**
+     * record count, failures, queue wait and run time of every completed task, null to stop recording.
+     */
+    public void setTaskMetrics(TaskMetrics taskMetrics) {
+        this.mTaskMetrics = taskMetrics;
+    }
+
+    void onTaskCompleted(Task task) {
+        if (task.isSentinel()) {
+            return;
+        }
+
+        mCompletionBarrier.onCompleted(task);
+
+        // a task whose callable never ran, or was cut short, would skew the profile trusted by later launches.
+        if (mDurationProfile != null && task.isCallableCompleted()) {
+            mDurationProfile.record(task.getName(), task.getQueueWaitNanos(), task.getRunNanos());
+        }
+
+        final TaskMetrics taskMetrics = mTaskMetrics;
+        if (taskMetrics != null) {
+            final TaskResult<?> taskResult = task.getTaskResult();
+            taskMetrics.record(task.getName(), task.getThreadMode(), task.getQueueWaitNanos(), task.getRunNanos(),
+                    taskResult != null && taskResult.isFailure());
+        }
+    }
+
+    void onTaskSetCompleted(TaskSet taskSet) {
+        mCompletionBarrier.onCompleted(taskSet);
+        if (mDurationProfile != null) {
+            mDurationProfile.flush();
+        }
+    }
+
     public boolean startTask(Task task) {
         if (task == null || task.getName() == null) {
-            Log.e(TAG, "startTask; task is null or task name is null. task=" + task + ", just return.");
+            Log.e(TAG, "startTask; task is null or task name is null. task={}, just return.", task);
+            return false;
+        }
+
+        if (!registerTask(task)) {
             return false;
         }
 
         mTaskMap.put(task.getName(), task);
-        Log.e(TAG, "startTask; execute task=" + task);
+        mCompletionBarrier.add(task);
+        Log.d(TAG, "startTask; execute task={}", task);
         task.execute();
         return true;
     }
 
+    /**
+     * register the task without executing it. the task, or any task of it if it is a task set, executes once its
+     * result is requested by {@link #getTaskResult(String)} and the like or by {@link #demandTask(String)}, together
+     * with only the tasks it depends on; tasks nothing depends on stay dormant. every task executes at most once
+     * however many threads request it.
+     */
+    public boolean addLazyTask(Task task) {
+        if (task == null || task.getName() == null) {
+            Log.e(TAG, "addLazyTask; task is null or task name is null. task={}, just return.", task);
+            return false;
+        }
+
+        if (!registerTask(task)) {
+            return false;
+        }
+
+        if (task instanceof TaskSet && mTaskExecutor instanceof GraphAwareTaskExecutor) {
+            ((GraphAwareTaskExecutor) mTaskExecutor).prepareTaskGraph(task);
+        }
+        task.markDormant();
+        mTaskMap.put(task.getName(), task);
+        Log.d(TAG, "addLazyTask; task={}", task);
+        return true;
+    }
+
+    /**
+     * execute the lazy task with the name and the dormant tasks it depends on, without waiting for it.
+     *
+     * @return false if cannot find the task.
+     */
+    public boolean demandTask(String taskName) {
+        final Task targetTask = getTask(taskName);
+        if (targetTask == null) {
+            return false;
+        }
+
+        demand(targetTask);
+        return true;
+    }
+
+    private void demand(Task task) {
+        if (task.isDormant()) {
+            Log.d(TAG, "demand; task={}", task);
+            // a demanded task is started, waitForCompleted waits for it.
+            mCompletionBarrier.add(task);
+            task.demand();
+        }
+    }
+
     public boolean addConditionTask(TaskCondition condition, Task task) {
         if (condition == null || task == null || task.getName() == null) {
-            Log.e(TAG, "addConditionTask; condition is null or task is null or task name is null. condition=" + condition + ", task=" + task + ", just return.");
+            Log.e(TAG, "addConditionTask; condition is null or task is null or task name is null. condition={}, task={}, just return.", condition, task);
+            return false;
+        }
+
+        if (!registerTask(task)) {
             return false;
         }
 
-        Log.d(TAG, "addConditionTask; condition=" + condition + ", task=" + task);
+        Log.d(TAG, "addConditionTask; condition={}, task={}", condition, task);
         mTaskMap.put(task.getName(), task);
+        mCompletionBarrier.add(task);
         synchronized (mConditionTaskMap) {
             List<Task> taskList = mConditionTaskMap.get(condition);
             if (taskList == null) {
@@ -81,48 +245,112 @@ public class TaskManager {
         return true;
     }
 
+    /**
+     * index the task and all tasks of it if it is a task set by name.
+     *
+     * @return false if a different task with a same name is registered and not completed yet.
+     */
+    private boolean registerTask(Task task) {
+        final List<Task> tasks = new ArrayList<>();
+        tasks.add(task);
+        if (task instanceof TaskSet) {
+            tasks.addAll(((TaskSet) task).getAllTasks());
+        }
+
+        synchronized (mTaskIndex) {
+            for (Task current : tasks) {
+                final Task registeredTask = mTaskIndex.get(current.getName());
+                if (registeredTask != null && registeredTask != current && registeredTask.getTaskState() != Task.STATE_COMPLETED) {
+                    Log.e(TAG, "registerTask; duplicate task name={}, task={}, registered task={}, just return.", current.getName(), current, registeredTask);
+                    return false;
+                }
+            }
+
+            for (Task current : tasks) {
+                mTaskIndex.put(current.getName(), current);
+            }
+        }
+        return true;
+    }
+
     public void invokeCondition(TaskCondition condition) {
-        Log.d(TAG, "invokeCondition; receive condition=" + condition + " and will invoke matched task.");
+        Log.d(TAG, "invokeCondition; receive condition={} and will invoke matched task.", condition);
         List<Task> taskList = mConditionTaskMap.get(condition);
         if (taskList == null) {
-            Log.d(TAG, "invokeCondition; receive condition=" + condition + ", matched task is empty, just return.");
+            Log.d(TAG, "invokeCondition; receive condition={}, matched task is empty, just return.", condition);
             return;
         }
 
         ArrayList<Task> copyTaskList = new ArrayList<>(taskList);
-        Log.d(TAG, "invokeCondition; receive condition=" + condition + ", matched task=" + copyTaskList + ", and execute...");
+        Log.d(TAG, "invokeCondition; receive condition={}, matched task={}, and execute...", condition, copyTaskList);
         for (Task task : copyTaskList) {
             task.execute();
         }
-        Log.d(TAG, "invokeCondition; receive condition=" + condition + ", matched task=" + copyTaskList + " execute done.");
+        Log.d(TAG, "invokeCondition; receive condition={}, matched task={} execute done.", condition, copyTaskList);
     }
 
+    /**
+     * block until all started tasks are completed, including condition tasks not triggered yet and tasks started
+     * during the wait. like {@link Task#waitForTaskResult()}, the current thread helps to run queued tasks.
+     */
     public void waitForCompleted() {
-        for (Map.Entry<String, Task> entry : mTaskMap.entrySet()) {
-            final Task task = entry.getValue();
-            Log.d(TAG, "waitForCompleted; try wait task=" + task);
-            try {
-                task.waitForTaskResult();
-            } catch (InterruptedException e) {
-                Log.d(TAG, "waitForCompleted; interrupt task=" + task + " waitForTaskResult", e);
-            }
-        }
+        waitForCompleted(TaskCompletionBarrier.ALL);
     }
 
     public void waitForCompleted(TaskFilter filter) {
-        for (Map.Entry<String, Task> entry : mTaskMap.entrySet()) {
-            final Task task = entry.getValue();
-            if (!filter.accept(task)) {
-                Log.d(TAG, "waitForCompleted; skip task=" + task);
-                continue;
-            }
+        try {
+            mCompletionBarrier.awaitAll(filter, -1);
+        } catch (InterruptedException e) {
+            Log.d(TAG, "waitForCompleted; interrupt", e);
+        }
+    }
 
-            Log.d(TAG, "waitForCompleted; try wait task=" + task);
-            try {
-                task.waitForTaskResult();
-            } catch (InterruptedException e) {
-                Log.d(TAG, "waitForCompleted; interrupt task=" + task + " waitForTaskResult", e);
-            }
+    /**
+     * @return false if some task is not completed in time or the wait is interrupted.
+     */
+    public boolean waitForCompleted(long timeout, TimeUnit unit) {
+        return awaitAll(timeout, unit);
+    }
+
+    /**
+     * like {@link #waitForCompleted()}, but gives up after the timeout and does not help to run any task, see
+     * {@link Task#waitForTaskResult(long, TimeUnit)}. parks once however many tasks are outstanding.
+     *
+     * @return false if some task is not completed in time or the wait is interrupted.
+     */
+    public boolean awaitAll(long timeout, TimeUnit unit) {
+        return awaitAll(TaskCompletionBarrier.ALL, timeout, unit);
+    }
+
+    /**
+     * @param filter called under the lock of the barrier for every task started or completed during the wait,
+     *               so it must be cheap and must not start tasks.
+     */
+    public boolean awaitAll(TaskFilter filter, long timeout, TimeUnit unit) {
+        try {
+            return mCompletionBarrier.awaitAll(filter, Math.max(0, unit.toNanos(timeout)));
+        } catch (InterruptedException e) {
+            Log.d(TAG, "awaitAll; interrupt", e);
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * @return the first started task to complete during the wait, null if no task is outstanding, the timeout
+     * elapsed or the wait is interrupted.
+     */
+    public Task awaitAny(long timeout, TimeUnit unit) {
+        return awaitAny(TaskCompletionBarrier.ALL, timeout, unit);
+    }
+
+    public Task awaitAny(TaskFilter filter, long timeout, TimeUnit unit) {
+        try {
+            return mCompletionBarrier.awaitAny(filter, Math.max(0, unit.toNanos(timeout)));
+        } catch (InterruptedException e) {
+            Log.d(TAG, "awaitAny; interrupt", e);
+            Thread.currentThread().interrupt();
+            return null;
         }
     }
 
@@ -130,15 +358,44 @@ public class TaskManager {
         return getTaskResult(taskName, MODE_BLOCK);
     }
 
+    /**
+     * like {@link #getTaskResult(String, int)} with {@link #MODE_BLOCK}, but gives up after the timeout.
+     *
+     * @return null if the task is not completed in time.
+     */
+    public <T> T getTaskResult(String taskName, long timeout, TimeUnit unit) {
+        Task targetTask = getTask(taskName);
+        if (targetTask == null) {
+            return null;
+        }
+
+        demand(targetTask);
+        try {
+            TaskResult taskResult = targetTask.waitForTaskResult(timeout, unit);
+            Log.d(TAG, "getTaskResult; task={} result={}", taskName, taskResult);
+
+            if (taskResult != null) {
+                return (T) taskResult.result();
+            }
+        } catch (TimeoutException e) {
+            Log.d(TAG, "getTaskResult; task={} is not completed in {}ms", taskName, unit.toMillis(timeout));
+        } catch (InterruptedException e) {
+            Log.d(TAG, "interrupt task={} waitForTaskResult", targetTask, e);
+        }
+
+        return null;
+    }
+
     public <T> T getTaskResult(String taskName, @TaskManager.Mode int mode) {
         Task targetTask = getTask(taskName);
         if (targetTask == null) {
             return null;
         }
 
+        demand(targetTask);
         if (Task.STATE_COMPLETED == targetTask.getTaskState()) {
             TaskResult taskResult = targetTask.getTaskResult();
-            Log.d(TAG, "getTaskResult; task=" + taskName + " is completed, taskResult=" + taskResult);
+            Log.d(TAG, "getTaskResult; task={} is completed, taskResult={}", taskName, taskResult);
 
             if (taskResult == null) {
                 return null;
@@ -148,52 +405,68 @@ public class TaskManager {
         }
 
         if (mode == MODE_ASYNC) {
-            Log.d(TAG, "getTaskResult; task=" + taskName + " is not completed and mode is async, just return.");
+            Log.d(TAG, "getTaskResult; task={} is not completed and mode is async, just return.", taskName);
             return null;
         }
 
         try {
-            Log.d(TAG, "getTaskResult; task=" + taskName + " is not completed and mode is block, so waitForTaskResult...");
+            Log.d(TAG, "getTaskResult; task={} is not completed and mode is block, so waitForTaskResult...", taskName);
             TaskResult taskResult = targetTask.waitForTaskResult();
-            Log.d(TAG, "getTaskResult; task=" + taskName + " is not completed and mode is block, result=" + taskResult);
+            Log.d(TAG, "getTaskResult; task={} is not completed and mode is block, result={}", taskName, taskResult);
 
             if (taskResult != null) {
                 return (T) taskResult.result();
             }
         } catch (InterruptedException e) {
-            Log.d(TAG, "interrupt task=" + targetTask + " waitForTaskResult", e);
+            Log.d(TAG, "interrupt task={} waitForTaskResult", targetTask, e);
         }
 
         return null;
     }
 
-    public <T> Task<T> getTask(String taskName) {
-        if (taskName == null) {
-            Log.d(TAG, "getTask; taskName is null, just return.");
-            return null;
+    /**
+     * call the callback with the result of the task once it is completed, without blocking the current thread.
+     *
+     * @return false if cannot find the task.
+     */
+    public <T> boolean getTaskResultAsync(String taskName, TaskResultCallback<T> callback) {
+        final Task<T> targetTask = getTask(taskName);
+        if (targetTask == null) {
+            return false;
         }
 
-        Task targetTask = null;
-
-        for (Map.Entry<String, Task> entry : mTaskMap.entrySet()) {
-            Task task = entry.getValue();
-            if (taskName.equals(task.getName())) {
-                targetTask = task;
+        demand(targetTask);
+        targetTask.whenComplete(callback);
+        return true;
+    }
 
-            } else if (task instanceof TaskSet) {
-                targetTask = ((TaskSet) task).getTask(taskName);
+    /**
+     * @return a future of the result of the task, completed exceptionally if the task fails or cannot be found.
+     */
+    @RequiresApi(24)
+    public <T> CompletableFuture<T> getTaskResultAsync(String taskName) {
+        final Task<T> targetTask = getTask(taskName);
+        if (targetTask == null) {
+            final CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalArgumentException("cannot find task by name=" + taskName));
+            return future;
+        }
 
-            }
+        demand(targetTask);
+        return targetTask.toCompletableFuture();
+    }
 
-            if (targetTask != null) {
-                break;
-            }
+    public <T> Task<T> getTask(String taskName) {
+        if (taskName == null) {
+            Log.d(TAG, "getTask; taskName is null, just return.");
+            return null;
         }
 
+        final Task targetTask = mTaskIndex.get(taskName);
         if (targetTask == null) {
-            Log.e(TAG, "getTask; cannot find task by name=" + taskName);
+            Log.e(TAG, "getTask; cannot find task by name={}", taskName);
         } else {
-            Log.d(TAG, "getTask; find task=" + targetTask + " by name=" + taskName);
+            Log.d(TAG, "getTask; find task={} by name={}", targetTask, taskName);
         }
 
         return (Task<T>) targetTask;
@@ -0,0 +1,207 @@
+package com.coofee.dep;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * counts, failures, queue wait time and run time of completed tasks, per task name and per thread mode.
+ * <p>
+ * queue wait is the time between the task became ready (handed to the executor) and started, a long queue wait
+ * with a short run time means the task waits for a thread, not that it is slow; compare it with the
+ * {@link TaskExecutorStats} of the executor. set it by {@link TaskManager#setTaskMetrics(TaskMetrics)}.
+ */
+public class TaskMetrics {
+
+    private static final int THREAD_MODE_COUNT = Task.THREAD_MODE_IO + 1;
+
+    private final ConcurrentMap<String, Counter> mTaskCounterMap = new ConcurrentHashMap<>();
+
+    private final Counter[] mThreadModeCounters = new Counter[THREAD_MODE_COUNT];
+
+    public TaskMetrics() {
+        for (int i = 0; i < THREAD_MODE_COUNT; i++) {
+            mThreadModeCounters[i] = new Counter();
+        }
+    }
+
+    /**
+     * record a completed task.
+     */
+    public void record(String taskName, @Task.ThreadMode int threadMode, long queueWaitNanos, long runNanos, boolean failed) {
+        Counter counter = mTaskCounterMap.get(taskName);
+        if (counter == null) {
+            final Counter newCounter = new Counter();
+            counter = mTaskCounterMap.putIfAbsent(taskName, newCounter);
+            if (counter == null) {
+                counter = newCounter;
+            }
+        }
+        counter.record(queueWaitNanos, runNanos, failed);
+
+        if (threadMode >= 0 && threadMode < THREAD_MODE_COUNT) {
+            mThreadModeCounters[threadMode].record(queueWaitNanos, runNanos, failed);
+        }
+    }
+
+    /**
+     * @return stats of the task, or null if it has never been recorded.
+     */
+    public Stats getTaskStats(String taskName) {
+        final Counter counter = mTaskCounterMap.get(taskName);
+        return counter == null ? null : counter.snapshot();
+    }
+
+    /**
+     * @return stats of all tasks of the thread mode.
+     */
+    public Stats getThreadModeStats(@Task.ThreadMode int threadMode) {
+        if (threadMode < 0 || threadMode >= THREAD_MODE_COUNT) {
+            return new Stats(0, 0, 0, 0, 0, 0);
+        }
+        return mThreadModeCounters[threadMode].snapshot();
+    }
+
+    /**
+     * @return names of all recorded tasks, sorted.
+     */
+    public List<String> getTaskNames() {
+        final List<String> taskNames = new ArrayList<>(mTaskCounterMap.keySet());
+        Collections.sort(taskNames);
+        return taskNames;
+    }
+
+    public void reset() {
+        mTaskCounterMap.clear();
+        for (Counter counter : mThreadModeCounters) {
+            counter.reset();
+        }
+    }
+
+    /**
+     * @param taskExecutor also print the saturation of the executor if it implements {@link TaskExecutorStats},
+     *                     may be null.
+     * @return a readable summary per thread mode and per task.
+     */
+    public String dump(TaskExecutor taskExecutor) {
+        final TaskExecutorStats executorStats = (taskExecutor instanceof TaskExecutorStats ? (TaskExecutorStats) taskExecutor : null);
+        final StringBuilder builder = new StringBuilder();
+        for (int threadMode = 0; threadMode < THREAD_MODE_COUNT; threadMode++) {
+            builder.append("threadMode=").append(threadMode).append(", ").append(getThreadModeStats(threadMode));
+            if (executorStats != null) {
+                builder.append(", queueDepth=").append(executorStats.getQueueDepth(threadMode))
+                        .append(", activeThreadCount=").append(executorStats.getActiveThreadCount(threadMode))
+                        .append(", rejectedCount=").append(executorStats.getRejectedCount(threadMode));
+            }
+            builder.append('\n');
+        }
+
+        for (String taskName : getTaskNames()) {
+            final Stats stats = getTaskStats(taskName);
+            if (stats != null) {
+                builder.append("task=").append(taskName).append(", ").append(stats).append('\n');
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * immutable snapshot of the recorded tasks.
+     */
+    public static final class Stats {
+        private final long mCount;
+        private final long mFailureCount;
+        private final long mTotalQueueWaitNanos;
+        private final long mMaxQueueWaitNanos;
+        private final long mTotalRunNanos;
+        private final long mMaxRunNanos;
+
+        Stats(long count, long failureCount, long totalQueueWaitNanos, long maxQueueWaitNanos,
+              long totalRunNanos, long maxRunNanos) {
+            this.mCount = count;
+            this.mFailureCount = failureCount;
+            this.mTotalQueueWaitNanos = totalQueueWaitNanos;
+            this.mMaxQueueWaitNanos = maxQueueWaitNanos;
+            this.mTotalRunNanos = totalRunNanos;
+            this.mMaxRunNanos = maxRunNanos;
+        }
+
+        public long getCount() {
+            return mCount;
+        }
+
+        public long getFailureCount() {
+            return mFailureCount;
+        }
+
+        public long getTotalQueueWaitNanos() {
+            return mTotalQueueWaitNanos;
+        }
+
+        public long getMaxQueueWaitNanos() {
+            return mMaxQueueWaitNanos;
+        }
+
+        public long getAverageQueueWaitNanos() {
+            return mCount == 0 ? 0 : mTotalQueueWaitNanos / mCount;
+        }
+
+        public long getTotalRunNanos() {
+            return mTotalRunNanos;
+        }
+
+        public long getMaxRunNanos() {
+            return mMaxRunNanos;
+        }
+
+        public long getAverageRunNanos() {
+            return mCount == 0 ? 0 : mTotalRunNanos / mCount;
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + mCount +
+                    ", failureCount=" + mFailureCount +
+                    ", avgQueueWaitUs=" + TimeUnit.NANOSECONDS.toMicros(getAverageQueueWaitNanos()) +
+                    ", maxQueueWaitUs=" + TimeUnit.NANOSECONDS.toMicros(mMaxQueueWaitNanos) +
+                    ", avgRunUs=" + TimeUnit.NANOSECONDS.toMicros(getAverageRunNanos()) +
+                    ", maxRunUs=" + TimeUnit.NANOSECONDS.toMicros(mMaxRunNanos);
+        }
+    }
+
+    private static class Counter {
+        private long count;
+        private long failureCount;
+        private long totalQueueWaitNanos;
+        private long maxQueueWaitNanos;
+        private long totalRunNanos;
+        private long maxRunNanos;
+
+        synchronized void record(long queueWaitNanos, long runNanos, boolean failed) {
+            count++;
+            if (failed) {
+                failureCount++;
+            }
+            totalQueueWaitNanos += queueWaitNanos;
+            maxQueueWaitNanos = Math.max(maxQueueWaitNanos, queueWaitNanos);
+            totalRunNanos += runNanos;
+            maxRunNanos = Math.max(maxRunNanos, runNanos);
+        }
+
+        synchronized Stats snapshot() {
+            return new Stats(count, failureCount, totalQueueWaitNanos, maxQueueWaitNanos, totalRunNanos, maxRunNanos);
+        }
+
+        synchronized void reset() {
+            count = 0;
+            failureCount = 0;
+            totalQueueWaitNanos = 0;
+            maxQueueWaitNanos = 0;
+            totalRunNanos = 0;
+            maxRunNanos = 0;
+        }
+    }
+}
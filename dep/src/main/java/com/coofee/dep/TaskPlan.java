@@ -0,0 +1,444 @@
+package com.coofee.dep;
+
+import android.os.Trace;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * an immutable, compiled task set which can be executed many times, even concurrently.
+ * <p>
+ * tasks are indexed in topological order and dependencies are kept in arrays, every {@link #run()} only creates
+ * a lightweight {@link Execution} holding the pending parent counts, results and one runnable per task of that run;
+ * dispatching and completing a task allocate nothing.
+ * the callables of the tasks are shared by all runs, so they must be safe to call concurrently.
+ * root/end task of task sets do nothing and are completed inline without going through the executor.
+ */
+public final class TaskPlan {
+    private static final String TAG = "Dep.TaskPlan";
+
+    private static final int THREAD_MODE_SENTINEL = -1;
+
+    /**
+     * stored for a task returning null, so a null slot still means not completed.
+     */
+    private static final Object NULL_RESULT = new Object();
+
+    private final String mName;
+
+    private final String[] mTaskNames;
+
+    private final Callable<?>[] mCallables;
+
+    private final int[] mThreadModes;
+
+    /**
+     * the compiled tasks, only read by executors for their priority and rank through {@link TaskRunnable#getTask()}.
+     */
+    private final Task<?>[] mTasks;
+
+    /**
+     * children of task i are mChildIndexes[mChildOffsets[i]] until mChildIndexes[mChildOffsets[i + 1]].
+     */
+    private final int[] mChildOffsets;
+
+    private final int[] mChildIndexes;
+
+    private final int[] mInDegrees;
+
+    private final int mHeadIndex;
+
+    private final int mTailIndex;
+
+    private final Map<String, Integer> mIndexMap;
+
+    private TaskPlan(String name, Task<?>[] tasks, String[] taskNames, Callable<?>[] callables, int[] threadModes,
+                     int[] childOffsets, int[] childIndexes, int[] inDegrees,
+                     int headIndex, int tailIndex, Map<String, Integer> indexMap) {
+        this.mName = name;
+        this.mTaskNames = taskNames;
+        this.mCallables = callables;
+        this.mThreadModes = threadModes;
+        this.mTasks = tasks;
+        this.mChildOffsets = childOffsets;
+        this.mChildIndexes = childIndexes;
+        this.mInDegrees = inDegrees;
+        this.mHeadIndex = headIndex;
+        this.mTailIndex = tailIndex;
+        this.mIndexMap = indexMap;
+    }
+
+    /**
+     * compile the graph of the task set, the task set itself is not modified and still can be executed once.
+     */
+    public static TaskPlan compile(TaskSet taskSet) {
+        // e.g. ranks of the critical path, read by the executor when the plan runs.
+        final TaskManager taskManager = TaskManager.getInstance();
+        final TaskExecutor taskExecutor = (taskManager == null ? null : taskManager.getTaskExecutor());
+        if (taskExecutor instanceof GraphAwareTaskExecutor) {
+            ((GraphAwareTaskExecutor) taskExecutor).prepareTaskGraph(taskSet);
+        }
+
+        final List<Task> sortedTasks = TaskGraph.topologicalSort(taskSet);
+        final int taskCount = sortedTasks.size();
+
+        final Map<Task, Integer> taskIndexMap = new IdentityHashMap<>(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            taskIndexMap.put(sortedTasks.get(i), i);
+        }
+
+        final Task<?>[] tasks = new Task<?>[taskCount];
+        final String[] taskNames = new String[taskCount];
+        final Callable<?>[] callables = new Callable<?>[taskCount];
+        final int[] threadModes = new int[taskCount];
+        final int[] childOffsets = new int[taskCount + 1];
+        final int[] inDegrees = new int[taskCount];
+        final Map<String, Integer> indexMap = new HashMap<>(taskCount);
+
+        int edgeCount = 0;
+        for (int i = 0; i < taskCount; i++) {
+            final Task task = sortedTasks.get(i);
+            tasks[i] = task;
+            taskNames[i] = task.getName();
+            callables[i] = task.getCallable();
+            threadModes[i] = task.isSentinel() ? THREAD_MODE_SENTINEL : task.getThreadMode();
+            if (!task.isSentinel()) {
+                indexMap.put(task.getName(), i);
+            }
+
+            childOffsets[i] = edgeCount;
+            edgeCount += task.getChildTasks().size();
+        }
+        childOffsets[taskCount] = edgeCount;
+
+        final int[] childIndexes = new int[edgeCount];
+        int edge = 0;
+        for (int i = 0; i < taskCount; i++) {
+            for (Object child : sortedTasks.get(i).getChildTasks()) {
+                final Integer childIndex = taskIndexMap.get(child);
+                if (childIndex == null) {
+                    // child on a cycle never executes.
+                    continue;
+                }
+                childIndexes[edge++] = childIndex;
+                inDegrees[childIndex]++;
+            }
+            // compact the edges dropped above.
+            childOffsets[i + 1] = edge;
+        }
+
+        final Task tailTask = taskSet.tailTask();
+        final Integer tailIndex = taskIndexMap.get(tailTask);
+        if (tailIndex == null) {
+            throw new IllegalStateException("cannot compile " + taskSet.getName() + ", its end task is unreachable.");
+        }
+
+        Log.d(TAG, "compile; taskSet={}, taskCount={}, edgeCount={}", taskSet.getName(), taskCount, edge);
+        return new TaskPlan(taskSet.getName(), tasks, taskNames, callables, threadModes, childOffsets, childIndexes,
+                inDegrees, taskIndexMap.get(taskSet.headTask()), tailIndex, Collections.unmodifiableMap(indexMap));
+    }
+
+    public String getName() {
+        return mName;
+    }
+
+    /**
+     * @return count of tasks, including root/end task of task sets.
+     */
+    public int getTaskCount() {
+        return mTaskNames.length;
+    }
+
+    /**
+     * start a new run of the plan on the executor of {@link TaskManager}.
+     */
+    public Execution run() {
+        return run(null);
+    }
+
+    public Execution run(ExecutionListener listener) {
+        final TaskManager taskManager = TaskManager.getInstance();
+        final Execution execution = new Execution(this, taskManager.getTaskExecutor(), taskManager.getTraceRecorder(), listener);
+        execution.dispatch(mHeadIndex);
+        return execution;
+    }
+
+    public interface ExecutionListener {
+        void beforeExecute(Execution execution, String taskName);
+
+        void afterExecute(Execution execution, String taskName, TaskResult<?> taskResult);
+
+        void onCompleted(Execution execution);
+    }
+
+    /**
+     * state of one run of a {@link TaskPlan}.
+     */
+    public static final class Execution {
+        private final TaskPlan mPlan;
+        private final TaskExecutor mTaskExecutor;
+        private final ExecutionListener mListener;
+        private final TraceRecorder mTraceRecorder;
+        private final AtomicIntegerArray mPendingParentCounts;
+        /**
+         * raw return value or error of every task, wrapped into {@link TaskResult} only when asked for,
+         * so completing a task allocates nothing. with a listener, the result passed to it is kept instead,
+         * so each task builds its {@link TaskResult} once.
+         */
+        private final AtomicReferenceArray<Object> mTaskResults;
+        private final AtomicReferenceArray<Task.ParentTaskError> mParentTaskErrors;
+        private final AtomicInteger mRemainingTaskCount;
+        /**
+         * handed to the executor or run inline when the task is ready, each task is dispatched once per run.
+         */
+        private final TaskRunnable[] mTaskRunnables;
+        /**
+         * set once the run is cancelled.
+         */
+        private volatile Task.TaskCancelledError mCancelledError;
+
+        Execution(TaskPlan plan, TaskExecutor taskExecutor, TraceRecorder traceRecorder, ExecutionListener listener) {
+            this.mPlan = plan;
+            this.mTaskExecutor = taskExecutor;
+            this.mTraceRecorder = traceRecorder;
+            this.mListener = listener;
+            this.mPendingParentCounts = new AtomicIntegerArray(plan.mInDegrees);
+            this.mTaskResults = new AtomicReferenceArray<>(plan.mTaskNames.length);
+            this.mParentTaskErrors = new AtomicReferenceArray<>(plan.mTaskNames.length);
+            this.mRemainingTaskCount = new AtomicInteger(plan.mTaskNames.length);
+            this.mTaskRunnables = new TaskRunnable[plan.mTaskNames.length];
+            for (int i = 0; i < mTaskRunnables.length; i++) {
+                if (plan.mThreadModes[i] != THREAD_MODE_SENTINEL) {
+                    mTaskRunnables[i] = new TaskRunnable(plan.mTasks[i], new IndexedRunnable(this, i));
+                }
+            }
+        }
+
+        public TaskPlan getPlan() {
+            return mPlan;
+        }
+
+        public boolean isCompleted() {
+            return mRemainingTaskCount.get() == 0;
+        }
+
+        /**
+         * cancel the run. tasks not handed to the executor yet complete with a {@link Task.TaskCancelledError} on
+         * the thread completing their parent, without being executed; running tasks may poll {@link #isCancelled()}
+         * and fail with a {@link Task.TaskCancelledError} whatever they return.
+         *
+         * @return false if the run is already completed or cancelled.
+         */
+        public boolean cancel() {
+            synchronized (this) {
+                if (isCompleted() || mCancelledError != null) {
+                    return false;
+                }
+                mCancelledError = new Task.TaskCancelledError("cancel plan=" + mPlan.mName);
+                return true;
+            }
+        }
+
+        public boolean isCancelled() {
+            return mCancelledError != null;
+        }
+
+        /**
+         * @return result of the task, or null if the task is not completed.
+         */
+        public TaskResult<?> getTaskResult(String taskName) {
+            final Integer index = mPlan.mIndexMap.get(taskName);
+            return index == null ? null : toTaskResult(mTaskResults.get(index));
+        }
+
+        /**
+         * @return success if all tasks succeed, otherwise the first failure reaching the end task;
+         * null if the run is not completed.
+         */
+        public TaskResult<?> getTaskResult() {
+            return toTaskResult(mTaskResults.get(mPlan.mTailIndex));
+        }
+
+        private static TaskResult<?> toTaskResult(Object result) {
+            if (result == null) {
+                return null;
+            } else if (result instanceof TaskResult) {
+                return (TaskResult<?>) result;
+            } else if (result == NULL_RESULT) {
+                return TaskResult.success(null);
+            } else if (result instanceof Throwable) {
+                return TaskResult.failure((Throwable) result);
+            }
+            return TaskResult.success(result);
+        }
+
+        public TaskResult<?> waitForTaskResult() throws InterruptedException {
+            synchronized (this) {
+                while (!isCompleted()) {
+                    wait();
+                }
+            }
+            return getTaskResult();
+        }
+
+        private void dispatch(int index) {
+            final int threadMode = mPlan.mThreadModes[index];
+            if (threadMode == THREAD_MODE_SENTINEL) {
+                execute(index);
+                return;
+            }
+
+            if (mCancelledError != null || mParentTaskErrors.get(index) != null) {
+                // the task will not run, complete it here instead of going through the executor.
+                Task.executeInline(mTaskRunnables[index]);
+                return;
+            }
+
+            if (mTraceRecorder != null) {
+                mTraceRecorder.record(TraceRecorder.EVENT_ENQUEUE, mPlan.mTaskNames[index], System.nanoTime());
+            }
+            mTaskExecutor.execute(threadMode, mTaskRunnables[index]);
+        }
+
+        private void execute(int index) {
+            final String taskName = mPlan.mTaskNames[index];
+            final boolean sentinel = mPlan.mThreadModes[index] == THREAD_MODE_SENTINEL;
+            if (!sentinel && mListener != null) {
+                mListener.beforeExecute(this, taskName);
+            }
+
+            if (!sentinel && Log.sDebug && Log.SUPPORT_TRACE) {
+                Trace.beginSection(taskName);
+            }
+
+            final boolean traced = (!sentinel && mTraceRecorder != null);
+            if (traced) {
+                mTraceRecorder.record(TraceRecorder.EVENT_START, taskName, System.nanoTime());
+            }
+
+            final Task.ParentTaskError parentTaskError = mParentTaskErrors.get(index);
+            Object result;
+            if (mCancelledError != null) {
+                result = mCancelledError;
+            } else if (parentTaskError != null) {
+                result = parentTaskError;
+            } else {
+                try {
+                    result = mPlan.mCallables[index].call();
+                    if (result == null) {
+                        result = NULL_RESULT;
+                    } else if (result instanceof TaskResult) {
+                        // a returned task result is a value, not the wrapped result of the task.
+                        result = TaskResult.success(result);
+                    }
+                } catch (Throwable e) {
+                    Log.e(TAG, "fail execute task={}", taskName, e);
+                    result = e;
+                }
+
+                if (mCancelledError != null) {
+                    result = mCancelledError;
+                }
+            }
+            if (!sentinel && mListener != null) {
+                // built once, passed to the listener and kept for getTaskResult.
+                result = toTaskResult(result);
+            }
+            mTaskResults.set(index, result);
+
+            if (traced) {
+                mTraceRecorder.record(TraceRecorder.EVENT_END, taskName, System.nanoTime());
+            }
+
+            if (!sentinel && Log.sDebug && Log.SUPPORT_TRACE) {
+                Trace.endSection();
+            }
+
+            if (!sentinel && mListener != null) {
+                mListener.afterExecute(this, taskName, (TaskResult<?>) result);
+            }
+
+            final int[] childIndexes = mPlan.mChildIndexes;
+            final int childStart = mPlan.mChildOffsets[index];
+            final int childEnd = mPlan.mChildOffsets[index + 1];
+            if (childStart < childEnd) {
+                final ChildReleaseAwareTaskExecutor releaseAware = (mTaskExecutor instanceof ChildReleaseAwareTaskExecutor
+                        ? (ChildReleaseAwareTaskExecutor) mTaskExecutor : null);
+                final boolean releasing = (releaseAware != null && releaseAware.beginReleaseChildren());
+                try {
+                    for (int i = childStart; i < childEnd; i++) {
+                        onParentTaskFinished(childIndexes[i], index, result);
+                    }
+                } finally {
+                    if (releaseAware != null) {
+                        releaseAware.endReleaseChildren(releasing);
+                    }
+                }
+            }
+
+            if (mRemainingTaskCount.decrementAndGet() == 0) {
+                synchronized (this) {
+                    notifyAll();
+                }
+
+                if (mListener != null) {
+                    mListener.onCompleted(this);
+                }
+            }
+        }
+
+        private void onParentTaskFinished(int index, int parentIndex, Object parentResult) {
+            final Throwable parentError = (parentResult instanceof TaskResult
+                    ? ((TaskResult<?>) parentResult).error()
+                    : (parentResult instanceof Throwable ? (Throwable) parentResult : null));
+            if (parentError != null) {
+                // fail fast like Task, only save first parent task error.
+                final String cause = "fail execute task=" + mPlan.mTaskNames[index] + " caused by " + mPlan.mTaskNames[parentIndex];
+                mParentTaskErrors.compareAndSet(index, null, new Task.ParentTaskError(cause, parentError));
+                if (mPendingParentCounts.getAndSet(index, 0) > 0) {
+                    dispatch(index);
+                }
+                return;
+            }
+
+            while (true) {
+                final int pendingParentCount = mPendingParentCounts.get(index);
+                if (pendingParentCount <= 0) {
+                    return;
+                }
+
+                if (mPendingParentCounts.compareAndSet(index, pendingParentCount, pendingParentCount - 1)) {
+                    if (pendingParentCount == 1) {
+                        dispatch(index);
+                    }
+                    return;
+                }
+            }
+        }
+    }
+
+    /**
+     * executes one task of a run.
+     */
+    private static final class IndexedRunnable implements Runnable {
+        private final Execution mExecution;
+        private final int mIndex;
+
+        IndexedRunnable(Execution execution, int index) {
+            this.mExecution = execution;
+            this.mIndex = index;
+        }
+
+        @Override
+        public void run() {
+            mExecution.execute(mIndex);
+        }
+    }
+}
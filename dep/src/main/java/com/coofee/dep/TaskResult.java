@@ -1,6 +1,13 @@
 package com.coofee.dep;
 
 public final class TaskResult<T> {
+    /**
+     * results are immutable, so the common values share one instance instead of allocating on every completion.
+     */
+    private static final TaskResult<?> NULL = new TaskResult<>(null);
+    private static final TaskResult<?> TRUE = new TaskResult<>(Boolean.TRUE);
+    private static final TaskResult<?> FALSE = new TaskResult<>(Boolean.FALSE);
+
     private final Object result;
 
     private TaskResult(Object result) {
@@ -40,6 +47,13 @@ public final class TaskResult<T> {
     }
 
     public static <T> TaskResult<T> success(T result) {
+        if (result == null) {
+            return (TaskResult<T>) NULL;
+        } else if (result == Boolean.TRUE) {
+            return (TaskResult<T>) TRUE;
+        } else if (result == Boolean.FALSE) {
+            return (TaskResult<T>) FALSE;
+        }
         return new TaskResult<>(result);
     }
 
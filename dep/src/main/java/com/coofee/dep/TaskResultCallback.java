@@ -0,0 +1,8 @@
+package com.coofee.dep;
+
+/**
+ * receives the result of a task once it is completed, see {@link Task#whenComplete(TaskResultCallback)}.
+ */
+public interface TaskResultCallback<V> {
+    void onTaskResult(TaskResult<V> taskResult);
+}
@@ -0,0 +1,43 @@
+package com.coofee.dep;
+
+/**
+ * the runnable handed to {@link TaskExecutor}, executors can use {@link #getTask()} to order ready tasks.
+ */
+public final class TaskRunnable implements Runnable {
+    private final Task<?> mTask;
+
+    /**
+     * runs the task itself, or one run of it compiled into a {@link TaskPlan}.
+     */
+    private final Runnable mRunnable;
+
+    TaskRunnable(Task<?> task) {
+        this.mTask = task;
+        this.mRunnable = null;
+    }
+
+    TaskRunnable(Task<?> task, Runnable runnable) {
+        this.mTask = task;
+        this.mRunnable = runnable;
+    }
+
+    public Task<?> getTask() {
+        return mTask;
+    }
+
+    @Override
+    public void run() {
+        if (mRunnable != null) {
+            mRunnable.run();
+        } else {
+            mTask.innerExecute();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "TaskRunnable{" +
+                "task=" + mTask +
+                '}';
+    }
+}
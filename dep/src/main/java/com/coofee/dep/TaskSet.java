@@ -1,14 +1,27 @@
 package com.coofee.dep;
 
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.Callable;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 public class TaskSet extends Task {
+    private static final String TAG = "Dep.TaskSet";
 
-    private static final Callable<Object> EMPTY = new Callable<Object>() {
+    static final Callable<Object> EMPTY = new Callable<Object>() {
         @Override
         public Object call() throws Exception {
             return true;
@@ -21,35 +34,81 @@ public class TaskSet extends Task {
 
     private final Task mEndTask;
 
-    private final CopyOnWriteArrayList<TaskSetExecutionListener> mTaskSetListenerList = new CopyOnWriteArrayList<>();
+    /**
+     * cancel the set once any of its tasks fails.
+     */
+    private final boolean mFailFast;
 
-    private TaskSet(String name, Task rootTask, Map<String, Task> allTask, Task endTask) {
+    /**
+     * read-only live view of the results of all tasks, shared by every result of the task set.
+     */
+    private final Map<String, TaskResult<?>> mResultView = new ResultView();
+
+    /**
+     * built once the end task is completed.
+     */
+    private volatile TaskResult<TaskSetResult> mTaskSetResult;
+
+    /**
+     * pending timeout of the whole set, scheduled once its root task starts.
+     */
+    private volatile ScheduledFuture<?> mTimeoutFuture;
+
+    private static final TaskSetExecutionListener[] EMPTY_LISTENERS = new TaskSetExecutionListener[0];
+
+    /**
+     * copy on write like the listeners of {@link Task}, firing them allocates nothing.
+     */
+    private volatile TaskSetExecutionListener[] mTaskSetListeners = EMPTY_LISTENERS;
+
+    private TaskSet(String name, Task rootTask, Map<String, Task> allTask, Task endTask, boolean failFast) {
         super(name, EMPTY);
         this.mRootTask = rootTask;
         this.mAllTask = allTask;
         this.mEndTask = endTask;
+        this.mFailFast = failFast;
         registerTaskListeners();
     }
 
-    public boolean addTaskSetExecutionListener(TaskSetExecutionListener listener) {
+    public synchronized boolean addTaskSetExecutionListener(TaskSetExecutionListener listener) {
         if (listener == null) {
             return false;
         }
-        return mTaskSetListenerList.add(listener);
+
+        final TaskSetExecutionListener[] listeners = mTaskSetListeners;
+        final TaskSetExecutionListener[] newListeners = Arrays.copyOf(listeners, listeners.length + 1);
+        newListeners[listeners.length] = listener;
+        mTaskSetListeners = newListeners;
+        return true;
     }
 
-    public boolean removeTaskSetExecutionListener(TaskSetExecutionListener listener) {
+    public synchronized boolean removeTaskSetExecutionListener(TaskSetExecutionListener listener) {
         if (listener == null) {
             return false;
         }
-        return mTaskSetListenerList.remove(listener);
+
+        final TaskSetExecutionListener[] listeners = mTaskSetListeners;
+        for (int i = 0; i < listeners.length; i++) {
+            if (listeners[i].equals(listener)) {
+                final TaskSetExecutionListener[] newListeners = new TaskSetExecutionListener[listeners.length - 1];
+                System.arraycopy(listeners, 0, newListeners, 0, i);
+                System.arraycopy(listeners, i + 1, newListeners, i, listeners.length - i - 1);
+                mTaskSetListeners = newListeners;
+                return true;
+            }
+        }
+        return false;
     }
 
-    public void removeAllTaskSetExecutionListener() {
-        mTaskSetListenerList.clear();
+    public synchronized void removeAllTaskSetExecutionListener() {
+        mTaskSetListeners = EMPTY_LISTENERS;
     }
 
     public void execute() {
+        final TaskExecutor taskExecutor = TaskManager.getInstance().getTaskExecutor();
+        if (taskExecutor instanceof GraphAwareTaskExecutor) {
+            ((GraphAwareTaskExecutor) taskExecutor).prepareTaskGraph(this);
+        }
         mRootTask.execute();
     }
 
@@ -62,40 +121,113 @@ public class TaskSet extends Task {
         return mAllTask.get(taskName);
     }
 
+    /**
+     * @return all tasks of the set, including tasks of nested task sets.
+     */
+    Collection<Task> getAllTasks() {
+        return mAllTask.values();
+    }
+
     @Override
     public TaskResult<TaskSetResult> waitForTaskResult() throws InterruptedException {
-        synchronized (this) {
-            while (getTaskState() != Task.STATE_COMPLETED) {
-                wait();
-            }
+        // the task set is completed with its end task, which helps to run the queued tasks of the set.
+        mEndTask.waitForTaskResult();
+        return getTaskResult();
+    }
+
+    /**
+     * every task of the set inherits the priority through the end task, which depends on all of them.
+     */
+    @Override
+    public TaskSet setPriority(int priority) {
+        super.setPriority(priority);
+        raisePriority(mEndTask, priority);
+        return this;
+    }
 
-            return getTaskResult();
+    @Override
+    void markDormant() {
+        mRootTask.markDormant();
+        for (Task task : mAllTask.values()) {
+            task.markDormant();
         }
+        mEndTask.markDormant();
+    }
+
+    @Override
+    boolean isDormant() {
+        return mEndTask.isDormant();
+    }
+
+    /**
+     * the end task depends on every task of the set, so demanding the set runs all of them.
+     */
+    @Override
+    void demand() {
+        mEndTask.demand();
+    }
+
+    @Override
+    Task getHelpTarget() {
+        return mEndTask;
+    }
+
+    @Override
+    public TaskResult<TaskSetResult> waitForTaskResult(long timeout, TimeUnit unit) throws InterruptedException, TimeoutException {
+        mEndTask.waitForTaskResult(timeout, unit);
+        return getTaskResult();
     }
 
+    /**
+     * @return the result of the task set, built once and cached. its result map is a read-only live view,
+     * so a task still running when the task set failed fast shows its result once completed.
+     */
     @Override
     public TaskResult<TaskSetResult> getTaskResult() {
-        if (getTaskState() != Task.STATE_COMPLETED) {
-            return null;
+        TaskResult<TaskSetResult> taskSetResult = mTaskSetResult;
+        if (taskSetResult != null) {
+            return taskSetResult;
         }
 
-        // get result from mAllTask and return.
-        final Map<String, TaskResult<?>> resultMap = new HashMap<>(mAllTask.size());
-        for (Map.Entry<String, Task> entry : mAllTask.entrySet()) {
-            resultMap.put(entry.getKey(), entry.getValue().getTaskResult());
+        if (getTaskState() != Task.STATE_COMPLETED) {
+            return null;
         }
 
         // task set always return success for collecting its task's results.
         TaskResult endTaskResult = mEndTask.getTaskResult();
         if (endTaskResult.isFailure()) {
-            return TaskResult.failure(new TaskSetResultError("fail execute " + getName(), endTaskResult.error(), resultMap));
+            taskSetResult = TaskResult.failure(new TaskSetResultError("fail execute " + getName(), endTaskResult.error(), mResultView));
         } else {
-            return TaskResult.success(new TaskSetResult(getName(), true, resultMap));
+            taskSetResult = TaskResult.success(new TaskSetResult(getName(), true, mResultView));
+        }
+        // racing threads build equal results, keep the first one.
+        synchronized (mResultView) {
+            if (mTaskSetResult == null) {
+                mTaskSetResult = taskSetResult;
+            }
+            return mTaskSetResult;
         }
     }
 
+    /**
+     * the callback receives the result of the task set, see {@link #getTaskResult()}.
+     */
     @Override
-    public synchronized int getTaskState() {
+    public void whenComplete(final TaskResultCallback callback) {
+        if (callback == null) {
+            return;
+        }
+
+        mEndTask.whenComplete(new TaskResultCallback() {
+            @Override
+            public void onTaskResult(TaskResult taskResult) {
+                callback.onTaskResult(getTaskResult());
+            }
+        });
+    }
+
+    @Override
+    public int getTaskState() {
         if (mRootTask.getTaskState() == Task.STATE_NEW) {
             return Task.STATE_NEW;
         } else if (mEndTask.getTaskState() == Task.STATE_COMPLETED) {
@@ -105,6 +237,55 @@ public class TaskSet extends Task {
         }
     }
 
+    /**
+     * cancel all tasks of the set, including nested task sets. tasks not started yet complete at once with a
+     * {@link TaskCancelledError} and so does the set, running tasks are told by {@link Task#isCancelled()} and
+     * interrupted if mayInterruptIfRunning.
+     *
+     * @return false if the task set is already completed.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        return cancel(new TaskCancelledError("cancel task set=" + getName()), mayInterruptIfRunning);
+    }
+
+    /**
+     * mark every task before completing any, so a task not started yet completes as cancelled itself instead of
+     * by a cancelled parent.
+     */
+    @Override
+    boolean markCancelled(TaskCancelledError cancelledError) {
+        if (getTaskState() == Task.STATE_COMPLETED) {
+            return false;
+        }
+
+        super.markCancelled(cancelledError);
+        mRootTask.markCancelled(cancelledError);
+        for (Task task : mAllTask.values()) {
+            task.markCancelled(cancelledError);
+        }
+        mEndTask.markCancelled(cancelledError);
+        return true;
+    }
+
+    @Override
+    void finishCancel(boolean mayInterruptIfRunning) {
+        mRootTask.finishCancel(mayInterruptIfRunning);
+        for (Task task : mAllTask.values()) {
+            task.finishCancel(mayInterruptIfRunning);
+        }
+        mEndTask.finishCancel(mayInterruptIfRunning);
+    }
+
+    @Override
+    void finishTimeout() {
+        mRootTask.finishTimeout();
+        for (Task task : mAllTask.values()) {
+            task.finishTimeout();
+        }
+        mEndTask.finishTimeout();
+    }
+
     boolean before(Task task) {
         if (task == null) {
             return false;
@@ -121,11 +302,19 @@ public class TaskSet extends Task {
         return mRootTask.after(task);
     }
 
-    Set<Task> getParentTasks() {
+    Task headTask() {
+        return mRootTask;
+    }
+
+    Task tailTask() {
+        return mEndTask;
+    }
+
+    TaskEdges getParentTasks() {
         return mRootTask.getParentTasks();
     }
 
-    Set<Task> getChildTasks() {
+    TaskEdges getChildTasks() {
         return mEndTask.getChildTasks();
     }
 
@@ -133,9 +322,10 @@ public class TaskSet extends Task {
         this.mRootTask.addTaskExecutionListener(new TaskExecutionListener() {
             @Override
             public void beforeExecute(Task task) {
+                mTimeoutFuture = scheduleTimeout(TaskSet.this, getTimeoutNanos());
                 fireBeforeExecute();
 
-                for (TaskSetExecutionListener listener : mTaskSetListenerList) {
+                for (TaskSetExecutionListener listener : mTaskSetListeners) {
                     listener.beforeExecuteTaskSet(TaskSet.this);
                 }
             }
@@ -154,12 +344,19 @@ public class TaskSet extends Task {
 
             @Override
             public void afterExecute(Task task) {
-                fireAfterExecute();
-                synchronized (TaskSet.this) {
-                    TaskSet.this.notifyAll();
+                final ScheduledFuture<?> timeoutFuture = mTimeoutFuture;
+                if (timeoutFuture != null) {
+                    timeoutFuture.cancel(false);
+                }
+
+                final TaskManager taskManager = TaskManager.getInstance();
+                if (taskManager != null) {
+                    taskManager.onTaskSetCompleted(TaskSet.this);
                 }
 
-                for (TaskSetExecutionListener listener : mTaskSetListenerList) {
+                fireAfterExecute();
+
+                for (TaskSetExecutionListener listener : mTaskSetListeners) {
                     listener.afterExecuteTaskSet(TaskSet.this);
                 }
 
@@ -169,16 +366,20 @@ public class TaskSet extends Task {
         final TaskExecutionListener allTaskExecutionListener = new TaskExecutionListener() {
             @Override
             public void beforeExecute(Task task) {
-                for (TaskSetExecutionListener listener : mTaskSetListenerList) {
+                for (TaskSetExecutionListener listener : mTaskSetListeners) {
                     listener.beforeExecute(task);
                 }
             }
 
             @Override
             public void afterExecute(Task task) {
-                for (TaskSetExecutionListener listener : mTaskSetListenerList) {
+                for (TaskSetExecutionListener listener : mTaskSetListeners) {
                     listener.afterExecute(task);
                 }
+
+                if (mFailFast) {
+                    cancelOnFailure(task);
+                }
             }
         };
         for (Task task : mAllTask.values()) {
@@ -186,6 +387,104 @@ public class TaskSet extends Task {
         }
     }
 
+    private void cancelOnFailure(Task task) {
+        final TaskResult taskResult = task.getTaskResult();
+        if (taskResult == null || !taskResult.isFailure()) {
+            return;
+        }
+
+        // only a task failing by itself or by its own timeout, not by a failed parent or by being cancelled.
+        final Throwable error = taskResult.error();
+        if (isCancelled() || error instanceof ParentTaskError
+                || (error instanceof TaskCancelledError && !(error instanceof TaskTimeoutError))) {
+            return;
+        }
+
+        Log.d(TAG, "cancelOnFailure; taskSet={}, task={}", getName(), task.getName());
+        cancel(new TaskCancelledError("cancel task set=" + getName() + " caused by task=" + task.getName(), error), false);
+    }
+
+    /**
+     * thrown by {@link Builder#build()} when the dependencies form a cycle, which would never complete.
+     */
+    public static class TaskCycleError extends IllegalStateException {
+        private final List<Task> cycle;
+
+        public TaskCycleError(String taskSetName, List<Task> cycle) {
+            super("cycle in task set=" + taskSetName + ": " + toPath(cycle));
+            this.cycle = Collections.unmodifiableList(cycle);
+        }
+
+        /**
+         * @return tasks of the cycle in dependency order, the last one is a parent of the first one.
+         */
+        public List<Task> getCycle() {
+            return cycle;
+        }
+
+        private static String toPath(List<Task> cycle) {
+            final StringBuilder builder = new StringBuilder();
+            for (Task task : cycle) {
+                builder.append(task.getName()).append(" -> ");
+            }
+            return builder.append(cycle.isEmpty() ? "" : cycle.get(0).getName()).toString();
+        }
+    }
+
+    /**
+     * result of every task of a task set by name, read through to the tasks.
+     */
+    private class ResultView extends AbstractMap<String, TaskResult<?>> {
+
+        @Override
+        public TaskResult<?> get(Object key) {
+            final Task task = mAllTask.get(key);
+            return task == null ? null : task.getTaskResult();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return mAllTask.containsKey(key);
+        }
+
+        @Override
+        public int size() {
+            return mAllTask.size();
+        }
+
+        @Override
+        public Set<Entry<String, TaskResult<?>>> entrySet() {
+            return new AbstractSet<Entry<String, TaskResult<?>>>() {
+                @Override
+                public Iterator<Entry<String, TaskResult<?>>> iterator() {
+                    final Iterator<Map.Entry<String, Task>> iterator = mAllTask.entrySet().iterator();
+                    return new Iterator<Entry<String, TaskResult<?>>>() {
+                        @Override
+                        public boolean hasNext() {
+                            return iterator.hasNext();
+                        }
+
+                        @Override
+                        public Entry<String, TaskResult<?>> next() {
+                            final Map.Entry<String, Task> entry = iterator.next();
+                            return new SimpleImmutableEntry<String, TaskResult<?>>(entry.getKey(), entry.getValue().getTaskResult());
+                        }
+
+                        @Override
+                        public void remove() {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+
+                @Override
+                public int size() {
+                    return mAllTask.size();
+                }
+            };
+        }
+    }
+
     public static class TaskSetResultError extends Exception {
         final Map<String, TaskResult<?>> resultMap;
 
@@ -194,6 +493,13 @@ public class TaskSet extends Task {
             this.resultMap = resultMap;
         }
 
+        /**
+         * @return read-only result of every task by name.
+         */
+        public Map<String, TaskResult<?>> getResultMap() {
+            return resultMap;
+        }
+
         @Override
         public String toString() {
             return "TaskSetResultError{" +
@@ -213,6 +519,13 @@ public class TaskSet extends Task {
             this.resultMap = resultMap;
         }
 
+        /**
+         * @return read-only result of every task by name.
+         */
+        public Map<String, TaskResult<?>> getResultMap() {
+            return resultMap;
+        }
+
         @Override
         public String toString() {
             return "TaskSetResult{" +
@@ -223,6 +536,10 @@ public class TaskSet extends Task {
         }
     }
 
+    /**
+     * edges are recorded as pairs of task indexes and wired in bulk by {@link #build()}, every task gets its final
+     * edge capacity at once, so building is linear in tasks plus edges.
+     */
     public static class Builder {
 
         private String name;
@@ -231,63 +548,280 @@ public class TaskSet extends Task {
 
         private final Map<String, Task> allTask = new HashMap<>();
 
+        /**
+         * endpoints of recorded edges, indexed by taskIndexes.
+         */
+        private final List<Task> edgeTasks = new ArrayList<>();
+
+        private final Map<Task, Integer> taskIndexes = new IdentityHashMap<>();
+
+        /**
+         * parent index at 2 * i, child index at 2 * i + 1.
+         */
+        private int[] edges = new int[16];
+
+        private int edgeCount;
+
+        private boolean transitiveReduction;
+
+        private boolean failFast;
+
         public Builder(String name) {
             this.name = name;
         }
 
+        /**
+         * drop the edges implied by other paths when building, e.g. a -> c when a -> b -> c, so a completed task
+         * notifies fewer children. the order of execution is the same. off by default, it takes
+         * O(taskCount / 512 * edgeCount) time.
+         */
+        public Builder transitiveReduction(boolean enable) {
+            this.transitiveReduction = enable;
+            return this;
+        }
+
+        /**
+         * cancel the task set once any of its tasks fails, so tasks not started yet are not executed and running
+         * ones are told by {@link Task#isCancelled()}, without being interrupted. off by default, then only the
+         * descendants of the failed task are skipped. the cancelled tasks fail with a {@link TaskCancelledError}
+         * caused by the failure.
+         */
+        public Builder failFast(boolean enable) {
+            this.failFast = enable;
+            return this;
+        }
+
         public Builder add(Task task) {
             allTask.put(task.getName(), task);
             currentTask = task;
             return this;
         }
 
+        /**
+         * the current task depends on the task.
+         */
         public Builder after(Task task) {
             allTask.put(task.getName(), task);
             if (currentTask != null) {
-                currentTask.after(task);
+                // a task set is left through its end task and entered through its root task.
+                addEdge(task.tailTask(), currentTask.headTask());
             }
             return this;
         }
 
+        /**
+         * the current task depends on all the tasks.
+         */
+        public Builder after(Task... tasks) {
+            for (Task task : tasks) {
+                after(task);
+            }
+            return this;
+        }
+
+        /**
+         * the task depends on the current task.
+         */
         public Builder before(Task task) {
             allTask.put(task.getName(), task);
             if (currentTask != null) {
-                currentTask.before(task);
+                addEdge(currentTask.tailTask(), task.headTask());
+            }
+            return this;
+        }
+
+        /**
+         * all the tasks depend on the current task.
+         */
+        public Builder before(Task... tasks) {
+            for (Task task : tasks) {
+                before(task);
             }
             return this;
         }
 
+        private void addEdge(Task parent, Task child) {
+            if (edgeCount * 2 == edges.length) {
+                edges = Arrays.copyOf(edges, edges.length * 2);
+            }
+            edges[edgeCount * 2] = indexOf(parent);
+            edges[edgeCount * 2 + 1] = indexOf(child);
+            edgeCount++;
+        }
+
+        private int indexOf(Task task) {
+            Integer index = taskIndexes.get(task);
+            if (index == null) {
+                index = edgeTasks.size();
+                taskIndexes.put(task, index);
+                edgeTasks.add(task);
+            }
+            return index;
+        }
+
         public TaskSet build() {
+            wireEdges();
+
             final Task rootTask = TaskFactory.from(name + ".root", EMPTY);
             final Task endTask = TaskFactory.from(name + ".end", EMPTY);
             final Map<String, Task> taskSetAllTasks = new HashMap<>();
             for (Map.Entry<String, Task> entry : allTask.entrySet()) {
                 final Task task = entry.getValue();
+                // root/end task are new and every task is visited once, so the edges are new.
+                if (task.getParentTasks().isEmpty()) {
+                    Task.addEdge(rootTask, task.headTask(), false, false);
+                }
+
+                if (task.getChildTasks().isEmpty()) {
+                    Task.addEdge(task.tailTask(), endTask, false, false);
+                }
+
                 if (task instanceof TaskSet) {
-                    final TaskSet taskSet = (TaskSet) task;
-                    if (taskSet.getParentTasks().isEmpty()) {
-                        rootTask.before(taskSet.mRootTask);
-                    }
+                    taskSetAllTasks.putAll(((TaskSet) task).mAllTask);
+                }
+            }
 
-                    if (taskSet.getChildTasks().isEmpty()) {
-                        endTask.after(taskSet.mEndTask);
-                    }
+            allTask.putAll(taskSetAllTasks);
+            return new TaskSet(name, rootTask, allTask, endTask, failFast);
+        }
 
-                    taskSetAllTasks.putAll(taskSet.mAllTask);
+        private void wireEdges() {
+            final int taskCount = edgeTasks.size();
 
-                } else {
-                    if (task.getParentTasks().isEmpty()) {
-                        rootTask.before(task);
-                    }
+            // group the edges by parent with a counting pass, then drop duplicates within each group by remembering
+            // the last parent of every child; so only tasks with edges from elsewhere need checking.
+            final int[] parentOffsets = new int[taskCount + 1];
+            for (int i = 0; i < edgeCount; i++) {
+                parentOffsets[edges[i * 2] + 1]++;
+            }
+            for (int i = 0; i < taskCount; i++) {
+                parentOffsets[i + 1] += parentOffsets[i];
+            }
+            final long[] sortedEdges = new long[edgeCount];
+            for (int i = 0; i < edgeCount; i++) {
+                sortedEdges[parentOffsets[edges[i * 2]]++] = ((long) edges[i * 2] << 32) | edges[i * 2 + 1];
+            }
+
+            final int[] lastParents = new int[taskCount];
+            Arrays.fill(lastParents, -1);
+            int uniqueEdgeCount = 0;
+            for (int i = 0; i < edgeCount; i++) {
+                final int parent = (int) (sortedEdges[i] >>> 32);
+                final int child = (int) sortedEdges[i];
+                if (lastParents[child] != parent) {
+                    lastParents[child] = parent;
+                    sortedEdges[uniqueEdgeCount++] = sortedEdges[i];
+                }
+            }
+
+            final boolean[] transitive = validateEdges(sortedEdges, uniqueEdgeCount);
+
+            final int[] parentCounts = new int[taskCount];
+            final int[] childCounts = new int[taskCount];
+            for (int i = 0; i < uniqueEdgeCount; i++) {
+                if (transitive == null || !transitive[i]) {
+                    childCounts[(int) (sortedEdges[i] >>> 32)]++;
+                    parentCounts[(int) sortedEdges[i]]++;
+                }
+            }
 
-                    if (task.getChildTasks().isEmpty()) {
-                        endTask.after(task);
+            final boolean[] hadParents = new boolean[taskCount];
+            final boolean[] hadChildren = new boolean[taskCount];
+            for (int i = 0; i < taskCount; i++) {
+                final Task task = edgeTasks.get(i);
+                hadParents[i] = !task.getParentTasks().isEmpty();
+                hadChildren[i] = !task.getChildTasks().isEmpty();
+                task.ensureEdgeCapacity(parentCounts[i], childCounts[i]);
+            }
+
+            for (int i = 0; i < uniqueEdgeCount; i++) {
+                if (transitive != null && transitive[i]) {
+                    continue;
+                }
+                final int parent = (int) (sortedEdges[i] >>> 32);
+                final int child = (int) sortedEdges[i];
+                Task.addEdge(edgeTasks.get(parent), edgeTasks.get(child), hadParents[child], hadChildren[parent]);
+            }
+
+            // wired, build() again only wires new edges.
+            edgeCount = 0;
+        }
+
+        /**
+         * check the edges for cycles, together with the wired edges inside nested task sets, so a cycle leaving a
+         * nested task set from an inner task and coming back through its root task is found too.
+         *
+         * @return for every edge, true if it is implied by other paths and should be dropped;
+         * null if transitive reduction is off.
+         * @throws TaskCycleError if the edges form a cycle, nothing is wired then.
+         */
+        private boolean[] validateEdges(long[] uniqueEdges, int uniqueEdgeCount) {
+            // tasks inside nested task sets are indexed after the tasks of the recorded edges.
+            final List<Task> graphTasks = new ArrayList<>(edgeTasks);
+            final Map<Task, Integer> graphIndexes = new IdentityHashMap<>(taskIndexes);
+            long[] graphEdges = Arrays.copyOf(uniqueEdges, Math.max(16, uniqueEdgeCount));
+            int graphEdgeCount = uniqueEdgeCount;
+            final Set<Task> walked = Collections.newSetFromMap(new IdentityHashMap<Task, Boolean>());
+            final ArrayDeque<Task> stack = new ArrayDeque<>();
+            for (Task task : allTask.values()) {
+                if (task instanceof TaskSet && walked.add(task.headTask())) {
+                    stack.push(task.headTask());
+                }
+            }
+            // the wired edges from the root tasks of nested task sets, through their tasks and out of their end tasks.
+            while (!stack.isEmpty()) {
+                final Task parent = stack.pop();
+                final long parentIndex = graphIndex(parent, graphTasks, graphIndexes);
+                for (Object child : parent.getChildTasks()) {
+                    if (walked.add((Task) child)) {
+                        stack.push((Task) child);
                     }
+                    if (graphEdgeCount == graphEdges.length) {
+                        graphEdges = Arrays.copyOf(graphEdges, graphEdgeCount * 2);
+                    }
+                    graphEdges[graphEdgeCount++] = (parentIndex << 32) | graphIndex((Task) child, graphTasks, graphIndexes);
                 }
             }
 
-            allTask.putAll(taskSetAllTasks);
-            return new TaskSet(name, rootTask, allTask, endTask);
+            final int[] cycle = TaskGraph.findCycle(graphTasks.size(), graphEdges, graphEdgeCount);
+            if (cycle != null) {
+                final List<Task> cycleTasks = new ArrayList<>(cycle.length);
+                for (int index : cycle) {
+                    cycleTasks.add(graphTasks.get(index));
+                }
+                throw new TaskCycleError(name, cycleTasks);
+            }
+
+            if (!transitiveReduction) {
+                return null;
+            }
+
+            final boolean[] transitive = TaskGraph.findTransitiveEdges(graphTasks.size(), graphEdges, graphEdgeCount);
+            int transitiveCount = 0;
+            for (int i = 0; i < uniqueEdgeCount; i++) {
+                if (transitive[i]) {
+                    transitiveCount++;
+                }
+            }
+            Log.d(TAG, "build; taskSet={}, edgeCount={}, transitiveEdgeCount={}", name, uniqueEdgeCount, transitiveCount);
+            return transitive;
+        }
+
+        private static int graphIndex(Task task, List<Task> graphTasks, Map<Task, Integer> graphIndexes) {
+            Integer index = graphIndexes.get(task);
+            if (index == null) {
+                index = graphTasks.size();
+                graphIndexes.put(task, index);
+                graphTasks.add(task);
+            }
+            return index;
+        }
+
+        /**
+         * build the task set and compile it to a {@link TaskPlan}, which can be executed many times.
+         */
+        public TaskPlan compile() {
+            return TaskPlan.compile(build());
         }
     }
 }
@@ -0,0 +1,401 @@
+package com.coofee.dep;
+
+import androidx.annotation.IntDef;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * replays a task graph in virtual time without running any task, so pool sizes and graph changes can be compared
+ * in a unit test instead of by systrace on a device.
+ * <p>
+ * every task takes the duration given by the {@link TaskDurationEstimator}, e.g. a loaded {@link TaskDurationProfile},
+ * and runs on the threads of its thread mode: ui tasks share one ui thread where idle tasks only run when no other
+ * ui task is ready, async tasks share the async threads, io tasks share the io threads or the async threads if there
+ * is none. root and end tasks of task sets take no time. thread switches, locks and cpu contention are not modelled.
+ * <p>
+ * the makespan can never be shorter than the critical path, when they are close more threads will not help,
+ * only shortening or splitting the tasks on the critical path will.
+ */
+public class TaskSimulator {
+    private static final String TAG = "Dep.TaskSimulator";
+
+    /**
+     * ready tasks get threads in the order they became ready, like {@link com.coofee.dep.executor.JavaExecutor}.
+     */
+    public static final int POLICY_FIFO = 0;
+
+    /**
+     * ready tasks on the longest remaining path get threads first,
+     * like {@link com.coofee.dep.executor.CriticalPathExecutor}.
+     */
+    public static final int POLICY_CRITICAL_PATH = 1;
+
+    @IntDef(value = {POLICY_FIFO, POLICY_CRITICAL_PATH})
+    @interface Policy {
+    }
+
+    private static final int POOL_UI = 0;
+    private static final int POOL_ASYNC = 1;
+    private static final int POOL_IO = 2;
+    private static final int POOL_COUNT = 3;
+
+    private static final int THREAD_MODE_COUNT = Task.THREAD_MODE_IO + 1;
+
+    private final int mAsyncThreadCount;
+
+    private final int mIoThreadCount;
+
+    private final TaskDurationEstimator mEstimator;
+
+    private final int mPolicy;
+
+    private TaskSimulator(Builder builder) {
+        this.mAsyncThreadCount = builder.asyncThreadCount;
+        this.mIoThreadCount = builder.ioThreadCount;
+        this.mEstimator = builder.durationEstimator;
+        this.mPolicy = builder.policy;
+    }
+
+    /**
+     * @param task task or task set to replay, it is not executed and its state is not changed.
+     */
+    public Result simulate(Task task) {
+        final List<Task> sortedTasks = TaskGraph.topologicalSort(task);
+        final int taskCount = sortedTasks.size();
+        final Map<Task, Integer> indexMap = new IdentityHashMap<>(taskCount);
+        for (int i = 0; i < taskCount; i++) {
+            indexMap.put(sortedTasks.get(i), i);
+        }
+
+        final int[] poolOfThreadMode = new int[THREAD_MODE_COUNT];
+        for (int threadMode = 0; threadMode < THREAD_MODE_COUNT; threadMode++) {
+            poolOfThreadMode[threadMode] = poolOf(threadMode);
+        }
+
+        // children of every task as indexes, in the same order as the tasks are notified.
+        final long[] durations = new long[taskCount];
+        final int[] pools = new int[taskCount];
+        final boolean[] idle = new boolean[taskCount];
+        final int[] inDegrees = new int[taskCount];
+        final int[] childOffsets = new int[taskCount + 1];
+        int[] childIndexes = new int[taskCount];
+        for (int i = 0; i < taskCount; i++) {
+            final Task current = sortedTasks.get(i);
+            if (current.isSentinel()) {
+                pools[i] = -1;
+            } else {
+                durations[i] = Math.max(0, mEstimator.estimateDuration(current));
+                final int threadMode = current.getThreadMode();
+                pools[i] = (threadMode >= 0 && threadMode < THREAD_MODE_COUNT ? poolOfThreadMode[threadMode] : POOL_ASYNC);
+                idle[i] = (threadMode == Task.THREAD_MODE_UI_IDLE);
+            }
+
+            final TaskEdges children = current.getChildTasks();
+            final int childCount = children.size();
+            int offset = childOffsets[i];
+            if (offset + childCount > childIndexes.length) {
+                childIndexes = Arrays.copyOf(childIndexes, Math.max(childIndexes.length * 2, offset + childCount));
+            }
+            for (int c = 0; c < childCount; c++) {
+                final Integer childIndex = indexMap.get(children.get(c));
+                if (childIndex != null) {
+                    childIndexes[offset++] = childIndex;
+                    inDegrees[childIndex]++;
+                }
+            }
+            childOffsets[i + 1] = offset;
+        }
+
+        // rank is the longest remaining path including the task itself.
+        final long[] ranks = new long[taskCount];
+        for (int i = taskCount - 1; i >= 0; i--) {
+            long maxChildRank = 0;
+            for (int c = childOffsets[i]; c < childOffsets[i + 1]; c++) {
+                maxChildRank = Math.max(maxChildRank, ranks[childIndexes[c]]);
+            }
+            ranks[i] = durations[i] + maxChildRank;
+        }
+
+        final long[] readySequences = new long[taskCount];
+        final Comparator<Integer> readyComparator = new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                final int a = o1;
+                final int b = o2;
+                if (idle[a] != idle[b]) {
+                    return idle[a] ? 1 : -1;
+                }
+                if (mPolicy == POLICY_CRITICAL_PATH && ranks[a] != ranks[b]) {
+                    return ranks[a] > ranks[b] ? -1 : 1;
+                }
+                return readySequences[a] < readySequences[b] ? -1 : (readySequences[a] == readySequences[b] ? 0 : 1);
+            }
+        };
+        final List<PriorityQueue<Integer>> readyQueues = new ArrayList<>(POOL_COUNT);
+        for (int pool = 0; pool < POOL_COUNT; pool++) {
+            readyQueues.add(new PriorityQueue<>(11, readyComparator));
+        }
+
+        final long[] startNanos = new long[taskCount];
+        final long[] endNanos = new long[taskCount];
+        Arrays.fill(startNanos, -1);
+        Arrays.fill(endNanos, -1);
+        final PriorityQueue<Integer> running = new PriorityQueue<>(11, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer o1, Integer o2) {
+                final long end1 = endNanos[o1];
+                final long end2 = endNanos[o2];
+                if (end1 != end2) {
+                    return end1 < end2 ? -1 : 1;
+                }
+                return o1 < o2 ? -1 : (o1.intValue() == o2.intValue() ? 0 : 1);
+            }
+        });
+
+        final int[] threadCounts = new int[]{1, mAsyncThreadCount, mIoThreadCount};
+        final int[] freeThreads = Arrays.copyOf(threadCounts, POOL_COUNT);
+        final long[] busyNanos = new long[POOL_COUNT];
+        final ArrayDeque<Integer> released = new ArrayDeque<>();
+        for (int i = 0; i < taskCount; i++) {
+            if (inDegrees[i] == 0) {
+                released.add(i);
+            }
+        }
+
+        long now = 0;
+        long sequence = 0;
+        while (true) {
+            // hand released tasks to their threads, root and end tasks complete at once.
+            while (!released.isEmpty()) {
+                final int index = released.poll();
+                if (pools[index] < 0) {
+                    startNanos[index] = now;
+                    endNanos[index] = now;
+                    release(index, childOffsets, childIndexes, inDegrees, released);
+                } else {
+                    readySequences[index] = sequence++;
+                    readyQueues.get(pools[index]).add(index);
+                }
+            }
+
+            for (int pool = 0; pool < POOL_COUNT; pool++) {
+                final PriorityQueue<Integer> readyQueue = readyQueues.get(pool);
+                while (freeThreads[pool] > 0 && !readyQueue.isEmpty()) {
+                    final int index = readyQueue.poll();
+                    startNanos[index] = now;
+                    endNanos[index] = now + durations[index];
+                    busyNanos[pool] += durations[index];
+                    freeThreads[pool]--;
+                    running.add(index);
+                }
+            }
+
+            if (running.isEmpty()) {
+                break;
+            }
+
+            // complete every task ending at the same time before starting others, so the policy sees all of them.
+            now = endNanos[running.peek()];
+            while (!running.isEmpty() && endNanos[running.peek()] == now) {
+                final int index = running.poll();
+                freeThreads[pools[index]]++;
+                release(index, childOffsets, childIndexes, inDegrees, released);
+            }
+        }
+
+        long makespanNanos = 0;
+        int first = -1;
+        for (int i = 0; i < taskCount; i++) {
+            makespanNanos = Math.max(makespanNanos, endNanos[i]);
+            if (first < 0 || ranks[i] > ranks[first]) {
+                first = i;
+            }
+        }
+
+        final List<Task> criticalPath = new ArrayList<>();
+        for (int index = first; index >= 0; ) {
+            if (pools[index] >= 0) {
+                criticalPath.add(sortedTasks.get(index));
+            }
+            int next = -1;
+            for (int c = childOffsets[index]; c < childOffsets[index + 1]; c++) {
+                if (next < 0 || ranks[childIndexes[c]] > ranks[next]) {
+                    next = childIndexes[c];
+                }
+            }
+            index = next;
+        }
+
+        Log.d(TAG, "simulate; task={}, taskCount={}, makespanNanos={}", task.getName(), taskCount, makespanNanos);
+        return new Result(makespanNanos, first < 0 ? 0 : ranks[first], criticalPath, threadCounts, busyNanos,
+                poolOfThreadMode, indexMap, startNanos, endNanos);
+    }
+
+    private static void release(int index, int[] childOffsets, int[] childIndexes, int[] inDegrees, ArrayDeque<Integer> released) {
+        for (int c = childOffsets[index]; c < childOffsets[index + 1]; c++) {
+            if (--inDegrees[childIndexes[c]] == 0) {
+                released.add(childIndexes[c]);
+            }
+        }
+    }
+
+    private int poolOf(int threadMode) {
+        switch (threadMode) {
+            case Task.THREAD_MODE_UI_BLOCK:
+            case Task.THREAD_MODE_UI_ENQUEUE:
+            case Task.THREAD_MODE_UI_IDLE:
+                return POOL_UI;
+
+            case Task.THREAD_MODE_IO:
+                return mIoThreadCount > 0 ? POOL_IO : POOL_ASYNC;
+
+            default:
+                return POOL_ASYNC;
+        }
+    }
+
+    /**
+     * outcome of one simulation, all times are virtual nanoseconds from the start of the task graph.
+     */
+    public static final class Result {
+        private final long mMakespanNanos;
+        private final long mCriticalPathNanos;
+        private final List<Task> mCriticalPath;
+        private final int[] mThreadCounts;
+        private final long[] mBusyNanos;
+        private final int[] mPoolOfThreadMode;
+        private final Map<Task, Integer> mIndexMap;
+        private final long[] mStartNanos;
+        private final long[] mEndNanos;
+
+        Result(long makespanNanos, long criticalPathNanos, List<Task> criticalPath, int[] threadCounts, long[] busyNanos,
+               int[] poolOfThreadMode, Map<Task, Integer> indexMap, long[] startNanos, long[] endNanos) {
+            this.mMakespanNanos = makespanNanos;
+            this.mCriticalPathNanos = criticalPathNanos;
+            this.mCriticalPath = Collections.unmodifiableList(criticalPath);
+            this.mThreadCounts = threadCounts;
+            this.mBusyNanos = busyNanos;
+            this.mPoolOfThreadMode = poolOfThreadMode;
+            this.mIndexMap = indexMap;
+            this.mStartNanos = startNanos;
+            this.mEndNanos = endNanos;
+        }
+
+        /**
+         * @return time until the last task completed.
+         */
+        public long getMakespanNanos() {
+            return mMakespanNanos;
+        }
+
+        /**
+         * @return duration of the longest path, the makespan with unlimited threads.
+         */
+        public long getCriticalPathNanos() {
+            return mCriticalPathNanos;
+        }
+
+        /**
+         * @return tasks of the longest path in dependency order, without root and end tasks of task sets.
+         */
+        public List<Task> getCriticalPath() {
+            return mCriticalPath;
+        }
+
+        /**
+         * @return busy time of the threads the thread mode runs on divided by their count and the makespan, 0 to 1.
+         */
+        public double getUtilization(@Task.ThreadMode int threadMode) {
+            if (threadMode < 0 || threadMode >= THREAD_MODE_COUNT || mMakespanNanos == 0) {
+                return 0;
+            }
+            final int pool = mPoolOfThreadMode[threadMode];
+            return (double) mBusyNanos[pool] / mThreadCounts[pool] / mMakespanNanos;
+        }
+
+        /**
+         * @return virtual start time of the task, -1 if it is not part of the simulated graph.
+         */
+        public long getStartNanos(Task task) {
+            final Integer index = mIndexMap.get(task);
+            return index == null ? -1 : mStartNanos[index];
+        }
+
+        /**
+         * @return virtual end time of the task, -1 if it is not part of the simulated graph.
+         */
+        public long getEndNanos(Task task) {
+            final Integer index = mIndexMap.get(task);
+            return index == null ? -1 : mEndNanos[index];
+        }
+
+        @Override
+        public String toString() {
+            final StringBuilder builder = new StringBuilder()
+                    .append("makespanUs=").append(TimeUnit.NANOSECONDS.toMicros(mMakespanNanos))
+                    .append(", criticalPathUs=").append(TimeUnit.NANOSECONDS.toMicros(mCriticalPathNanos))
+                    .append(", uiUtilization=").append(Math.round(getUtilization(Task.THREAD_MODE_UI_BLOCK) * 100)).append('%')
+                    .append(", asyncUtilization=").append(Math.round(getUtilization(Task.THREAD_MODE_ASYNC) * 100)).append('%');
+            if (mPoolOfThreadMode[Task.THREAD_MODE_IO] == POOL_IO) {
+                builder.append(", ioUtilization=").append(Math.round(getUtilization(Task.THREAD_MODE_IO) * 100)).append('%');
+            }
+            builder.append(", criticalPath=[");
+            for (int i = 0; i < mCriticalPath.size(); i++) {
+                builder.append(i == 0 ? "" : ", ").append(mCriticalPath.get(i).getName());
+            }
+            return builder.append(']').toString();
+        }
+    }
+
+    public static class Builder {
+        private int asyncThreadCount = Runtime.getRuntime().availableProcessors();
+
+        private int ioThreadCount;
+
+        private TaskDurationEstimator durationEstimator = TaskDurationEstimator.DEFAULT;
+
+        private int policy = POLICY_FIFO;
+
+        /**
+         * count of threads running async tasks, the available processors by default.
+         */
+        public Builder asyncThreadCount(int count) {
+            this.asyncThreadCount = Math.max(1, count);
+            return this;
+        }
+
+        /**
+         * count of threads running io tasks, 0 by default to run them on the async threads.
+         */
+        public Builder ioThreadCount(int count) {
+            this.ioThreadCount = Math.max(0, count);
+            return this;
+        }
+
+        /**
+         * duration of every task, {@link TaskDurationEstimator#DEFAULT} by default.
+         */
+        public Builder durationEstimator(TaskDurationEstimator estimator) {
+            this.durationEstimator = (estimator == null ? TaskDurationEstimator.DEFAULT : estimator);
+            return this;
+        }
+
+        public Builder policy(@Policy int policy) {
+            this.policy = policy;
+            return this;
+        }
+
+        public TaskSimulator build() {
+            return new TaskSimulator(this);
+        }
+    }
+}
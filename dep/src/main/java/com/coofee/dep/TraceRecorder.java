@@ -0,0 +1,205 @@
+package com.coofee.dep;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * in-process recorder of task events, exported as chrome trace-event json which can be opened by
+ * chrome://tracing or perfetto, on device or plain jvm.
+ * <p>
+ * events are kept in a preallocated ring buffer of primitive timestamps, recording an event allocates nothing
+ * and takes one atomic increment plus ordered stores, so it can stay on in production. when the ring is full the oldest events are
+ * overwritten. set it by {@link TaskManager#setTraceRecorder(TraceRecorder)}.
+ */
+public class TraceRecorder {
+
+    /**
+     * the task is ready and handed to the executor.
+     */
+    public static final byte EVENT_ENQUEUE = 0;
+    public static final byte EVENT_START = 1;
+    public static final byte EVENT_END = 2;
+
+    private final int mMask;
+
+    /**
+     * fields of the event in every slot, written with release and read with acquire semantics, so a reader which
+     * sees a field of a newer event also sees its slot invalidated.
+     */
+    private final AtomicLongArray mTimestamps;
+
+    private final AtomicIntegerArray mTypes;
+
+    private final AtomicReferenceArray<String> mNames;
+
+    private final AtomicReferenceArray<Thread> mThreads;
+
+    /**
+     * sequence + 1 of the event in every slot, set after the slot is written; 0 if never written or being written.
+     */
+    private final AtomicLongArray mPublished;
+
+    private final AtomicLong mSequence = new AtomicLong();
+
+    private volatile boolean mEnabled = true;
+
+    /**
+     * @param capacity max count of kept events, rounded up to a power of two.
+     */
+    public TraceRecorder(int capacity) {
+        int size = Integer.highestOneBit(Math.max(2, capacity) - 1) << 1;
+        this.mMask = size - 1;
+        this.mTimestamps = new AtomicLongArray(size);
+        this.mTypes = new AtomicIntegerArray(size);
+        this.mNames = new AtomicReferenceArray<>(size);
+        this.mThreads = new AtomicReferenceArray<>(size);
+        this.mPublished = new AtomicLongArray(size);
+    }
+
+    public boolean isEnabled() {
+        return mEnabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.mEnabled = enabled;
+    }
+
+    public int getCapacity() {
+        return mMask + 1;
+    }
+
+    /**
+     * @param timestampNanos timestamp from {@link System#nanoTime()}.
+     */
+    public void record(byte type, String name, long timestampNanos) {
+        if (!mEnabled) {
+            return;
+        }
+
+        final long sequence = mSequence.getAndIncrement();
+        final int slot = (int) (sequence & mMask);
+        // invalidate the slot before overwriting the older event in it, so an export never takes a torn event.
+        mPublished.set(slot, 0);
+        mTimestamps.lazySet(slot, timestampNanos);
+        mTypes.lazySet(slot, type);
+        mNames.lazySet(slot, name);
+        mThreads.lazySet(slot, Thread.currentThread());
+        mPublished.lazySet(slot, sequence + 1);
+    }
+
+    /**
+     * drop all recorded events, and start the sequence again so the next export does not walk over the dropped ones.
+     * events recorded while clearing may be dropped too.
+     */
+    public void clear() {
+        mSequence.set(0);
+        for (int i = 0; i <= mMask; i++) {
+            mPublished.set(i, 0);
+            mNames.lazySet(i, null);
+            mThreads.lazySet(i, null);
+        }
+    }
+
+    public String toChromeTrace() {
+        final StringWriter writer = new StringWriter();
+        try {
+            writeChromeTrace(writer);
+        } catch (IOException e) {
+            // never happens for string writer.
+        }
+        return writer.toString();
+    }
+
+    /**
+     * write the kept events as chrome trace-event json: a B/E pair on the running thread for every task run,
+     * and an instant event on the enqueuing thread when the task becomes ready.
+     * events still being written while exporting are skipped.
+     */
+    public void writeChromeTrace(Writer writer) throws IOException {
+        final long endSequence = mSequence.get();
+        final long startSequence = Math.max(0, endSequence - getCapacity());
+        final Set<Thread> threads = Collections.newSetFromMap(new IdentityHashMap<Thread, Boolean>());
+
+        writer.write("{\"traceEvents\":[");
+        boolean first = true;
+        for (long sequence = startSequence; sequence < endSequence; sequence++) {
+            final int slot = (int) (sequence & mMask);
+            if (mPublished.get(slot) != sequence + 1) {
+                continue;
+            }
+
+            final long timestampNanos = mTimestamps.get(slot);
+            final int type = mTypes.get(slot);
+            final String name = mNames.get(slot);
+            final Thread thread = mThreads.get(slot);
+            if (mPublished.get(slot) != sequence + 1) {
+                // overwritten while reading, the fields may mix two events.
+                continue;
+            }
+
+            threads.add(thread);
+            if (!first) {
+                writer.write(',');
+            }
+            first = false;
+
+            writer.write("{\"name\":");
+            writeString(writer, name);
+            writer.write(",\"cat\":\"task\",\"ph\":\"");
+            writer.write(type == EVENT_START ? "B" : (type == EVENT_END ? "E" : "i\",\"s\":\"t"));
+            writer.write("\",\"ts\":");
+            writer.write(toMicros(timestampNanos));
+            writer.write(",\"pid\":0,\"tid\":");
+            writer.write(Long.toString(thread.getId()));
+            writer.write('}');
+        }
+
+        for (Thread thread : threads) {
+            if (!first) {
+                writer.write(',');
+            }
+            first = false;
+
+            writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":0,\"tid\":");
+            writer.write(Long.toString(thread.getId()));
+            writer.write(",\"args\":{\"name\":");
+            writeString(writer, thread.getName());
+            writer.write("}}");
+        }
+        writer.write("],\"displayTimeUnit\":\"ms\"}");
+        writer.flush();
+    }
+
+    private static String toMicros(long nanos) {
+        final String sign = (nanos < 0 ? "-" : "");
+        nanos = Math.abs(nanos);
+        final long fraction = nanos % 1000;
+        return sign + (nanos / 1000) + "." + (fraction < 10 ? "00" : (fraction < 100 ? "0" : "")) + fraction;
+    }
+
+    private static void writeString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        if (value != null) {
+            for (int i = 0, length = value.length(); i < length; i++) {
+                final char c = value.charAt(i);
+                if (c == '"' || c == '\\') {
+                    writer.write('\\');
+                    writer.write(c);
+                } else if (c < 0x20) {
+                    writer.write(String.format("\\u%04x", (int) c));
+                } else {
+                    writer.write(c);
+                }
+            }
+        }
+        writer.write('"');
+    }
+}
@@ -4,17 +4,22 @@ import android.os.Handler;
 import android.os.Looper;
 import android.os.MessageQueue;
 
+import com.coofee.dep.GraphAwareTaskExecutor;
+import com.coofee.dep.InlineExecutionPolicy;
 import com.coofee.dep.Log;
 import com.coofee.dep.Task;
-import com.coofee.dep.TaskExecutor;
+import com.coofee.dep.TaskExecutorStats;
 
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
-public class AndroidExecutor implements TaskExecutor {
+public class AndroidExecutor implements GraphAwareTaskExecutor, InlineExecutionPolicy, TaskExecutorStats {
 
     private static final Looper MAIN_LOOPER = Looper.getMainLooper();
     private static final Handler UI_THREAD = new Handler(MAIN_LOOPER);
@@ -22,23 +27,77 @@ public class AndroidExecutor implements TaskExecutor {
 
     private static final ThreadPoolExecutor THREAD_POOL_EXECUTOR;
 
+    /**
+     * io tasks mostly block, so they get their own elastic pool and never starve cpu tasks.
+     */
+    private static final ThreadPoolExecutor IO_THREAD_POOL_EXECUTOR;
+
+    private static final int IO_MAXIMUM_POOL_SIZE = 64;
+
     static {
-        final int coreProcessor = Runtime.getRuntime().availableProcessors();
-        ThreadPoolExecutor executor = new ThreadPoolExecutor(coreProcessor, coreProcessor,
+        THREAD_POOL_EXECUTOR = newThreadPoolExecutor(Runtime.getRuntime().availableProcessors());
+        IO_THREAD_POOL_EXECUTOR = new ThreadPoolExecutor(0, IO_MAXIMUM_POOL_SIZE,
                 60L, TimeUnit.SECONDS,
-                new LinkedBlockingQueue<Runnable>(),
+                new SynchronousQueue<Runnable>(),
                 new ThreadFactory() {
                     private final AtomicInteger mCount = new AtomicInteger();
 
                     @Override
                     public Thread newThread(Runnable r) {
-                        Log.d("Dep.AndroidExecutor", "coreProcessor=" + coreProcessor);
+                        return new Thread(r, "DepIOThread#" + mCount.incrementAndGet());
+                    }
+                },
+                // all io threads are busy, fall back to the cpu pool instead of rejecting.
+                new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+                        THREAD_POOL_EXECUTOR.execute(ThreadPools.prioritized(r));
+                    }
+                });
+    }
+
+    /**
+     * ready tasks wait by their priority, so user-visible work goes before analytics when threads are scarce.
+     */
+    private static ThreadPoolExecutor newThreadPoolExecutor(final int poolSize) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize,
+                60L, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(),
+                new ThreadFactory() {
+                    private final AtomicInteger mCount = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Log.d("Dep.AndroidExecutor", "poolSize={}", poolSize);
                         return new Thread(r, "DepThread#" + mCount.incrementAndGet());
                     }
                 });
         executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private final ThreadPoolExecutor mThreadPoolExecutor;
+
+    private final boolean mAdaptivePoolSize;
+
+    public AndroidExecutor() {
+        this(false);
+    }
 
-        THREAD_POOL_EXECUTOR = executor;
+    /**
+     * @param adaptivePoolSize if true, async tasks run in a pool sized by the max parallel async task count
+     *                         of the started task set capped by core count, instead of a pool of core count threads.
+     */
+    public AndroidExecutor(boolean adaptivePoolSize) {
+        this.mAdaptivePoolSize = adaptivePoolSize;
+        this.mThreadPoolExecutor = adaptivePoolSize ? newThreadPoolExecutor(1) : THREAD_POOL_EXECUTOR;
+    }
+
+    @Override
+    public void prepareTaskGraph(Task task) {
+        if (mAdaptivePoolSize) {
+            ThreadPools.resizeForGraph(mThreadPoolExecutor, task);
+        }
     }
 
     @Override
@@ -70,7 +129,12 @@ public class AndroidExecutor implements TaskExecutor {
             break;
 
             case Task.THREAD_MODE_ASYNC: {
-                THREAD_POOL_EXECUTOR.execute(task);
+                mThreadPoolExecutor.execute(ThreadPools.prioritized(task));
+            }
+            break;
+
+            case Task.THREAD_MODE_IO: {
+                IO_THREAD_POOL_EXECUTOR.execute(task);
             }
             break;
 
@@ -79,4 +143,46 @@ public class AndroidExecutor implements TaskExecutor {
                 break;
         }
     }
+
+    @Override
+    public boolean canExecuteInline(int threadMode) {
+        switch (threadMode) {
+            case Task.THREAD_MODE_UI_BLOCK:
+            case Task.THREAD_MODE_UI_ENQUEUE:
+            case Task.THREAD_MODE_UI_IDLE:
+                return Looper.myLooper() == MAIN_LOOPER;
+
+            default:
+                return true;
+        }
+    }
+
+    @Override
+    public int getQueueDepth(int threadMode) {
+        return ThreadPools.queueDepth(getExecutor(threadMode));
+    }
+
+    @Override
+    public int getActiveThreadCount(int threadMode) {
+        return ThreadPools.activeThreadCount(getExecutor(threadMode));
+    }
+
+    @Override
+    public long getRejectedCount(int threadMode) {
+        return ThreadPools.rejectedCount(getExecutor(threadMode));
+    }
+
+    private Executor getExecutor(int threadMode) {
+        switch (threadMode) {
+            case Task.THREAD_MODE_ASYNC:
+                return mThreadPoolExecutor;
+
+            case Task.THREAD_MODE_IO:
+                return IO_THREAD_POOL_EXECUTOR;
+
+            default:
+                // the main looper, unknown.
+                return null;
+        }
+    }
 }
@@ -0,0 +1,155 @@
+package com.coofee.dep.executor;
+
+import com.coofee.dep.GraphAwareTaskExecutor;
+import com.coofee.dep.Task;
+import com.coofee.dep.TaskDurationEstimator;
+import com.coofee.dep.TaskExecutorStats;
+import com.coofee.dep.TaskGraph;
+import com.coofee.dep.TaskManager;
+import com.coofee.dep.TaskRunnable;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * executes ready tasks by their rank instead of FIFO, so tasks on the longest remaining path get threads first.
+ * the rank of every task is computed by {@link TaskGraph#computeCriticalPath} when a task set is started.
+ * a higher {@link Task#getEffectivePriority() effective priority} goes before any rank.
+ */
+public class CriticalPathExecutor implements GraphAwareTaskExecutor, TaskExecutorStats {
+
+    private static final int KEEP_ALIVE_SECONDS = 3;
+
+    private final TaskDurationEstimator mEstimator;
+    private final ThreadPoolExecutor mMainThread;
+    private final ThreadPoolExecutor mThreadPoolExecutor;
+    private final AtomicLong mSequence = new AtomicLong();
+
+    public CriticalPathExecutor() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public CriticalPathExecutor(int asyncThreadCount) {
+        this(asyncThreadCount, null);
+    }
+
+    /**
+     * @param estimator estimate the duration of tasks, null to use {@link TaskManager#getDurationEstimator()}.
+     */
+    public CriticalPathExecutor(int asyncThreadCount, TaskDurationEstimator estimator) {
+        this.mEstimator = estimator;
+        this.mMainThread = newPriorityExecutor(1, "Main#");
+        this.mThreadPoolExecutor = newPriorityExecutor(Math.max(1, asyncThreadCount), "Async#");
+    }
+
+    private static ThreadPoolExecutor newPriorityExecutor(int poolSize, final String namePrefix) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+
+            private final AtomicInteger mCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, namePrefix + mCount.incrementAndGet());
+            }
+        });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Override
+    public void prepareTaskGraph(Task task) {
+        final TaskDurationEstimator estimator = (mEstimator != null ? mEstimator : TaskManager.getInstance().getDurationEstimator());
+        TaskGraph.computeCriticalPath(task, estimator);
+    }
+
+    @Override
+    public void execute(int threadMode, Runnable task) {
+        switch (threadMode) {
+            case Task.THREAD_MODE_UI_BLOCK:
+            case Task.THREAD_MODE_UI_ENQUEUE:
+            case Task.THREAD_MODE_UI_IDLE:
+                mMainThread.execute(new RankedRunnable(task, mSequence.getAndIncrement()));
+                break;
+
+            case Task.THREAD_MODE_ASYNC:
+            case Task.THREAD_MODE_IO:
+                mThreadPoolExecutor.execute(new RankedRunnable(task, mSequence.getAndIncrement()));
+                break;
+
+            default:
+                // ignore unknown thread mode
+                break;
+        }
+    }
+
+    @Override
+    public int getQueueDepth(int threadMode) {
+        return ThreadPools.queueDepth(getExecutor(threadMode));
+    }
+
+    @Override
+    public int getActiveThreadCount(int threadMode) {
+        return ThreadPools.activeThreadCount(getExecutor(threadMode));
+    }
+
+    @Override
+    public long getRejectedCount(int threadMode) {
+        return ThreadPools.rejectedCount(getExecutor(threadMode));
+    }
+
+    private Executor getExecutor(int threadMode) {
+        switch (threadMode) {
+            case Task.THREAD_MODE_ASYNC:
+            case Task.THREAD_MODE_IO:
+                return mThreadPoolExecutor;
+
+            default:
+                return mMainThread;
+        }
+    }
+
+    static final class RankedRunnable implements Runnable, Comparable<RankedRunnable> {
+        final Runnable task;
+        final int priority;
+        final long rank;
+        final long sequence;
+
+        RankedRunnable(Runnable task, long sequence) {
+            this.task = task;
+            final Task<?> rankedTask = (task instanceof TaskRunnable ? ((TaskRunnable) task).getTask() : null);
+            this.priority = (rankedTask != null ? rankedTask.getEffectivePriority() : Task.PRIORITY_DEFAULT);
+            this.rank = (rankedTask != null ? rankedTask.getRank() : 0);
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        @Override
+        public int compareTo(RankedRunnable other) {
+            // higher priority first, then higher rank, then first in first out.
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+
+            if (rank != other.rank) {
+                return rank > other.rank ? -1 : 1;
+            }
+
+            if (sequence != other.sequence) {
+                return sequence < other.sequence ? -1 : 1;
+            }
+
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.coofee.dep.executor;
+
+import androidx.annotation.RequiresApi;
+
+import com.coofee.dep.ChildReleaseAwareTaskExecutor;
+import com.coofee.dep.Task;
+import com.coofee.dep.TaskExecutorStats;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * runs async tasks on a work-stealing {@link ForkJoinPool}.
+ * <p>
+ * when a task finished on a worker makes its children ready, the first async child is kept as the continuation
+ * of the worker and runs right after the task on the same thread, the others are pushed to the local deque of
+ * the worker where idle workers can steal them. tasks started while a task is still running, not released as its
+ * children, are always pushed, so a task may start another one and wait for it. so a chain of tasks never bounces between threads, and no edge
+ * goes through a shared queue or waits for a thread to be created.
+ */
+@RequiresApi(21)
+public class ForkJoinExecutor implements ChildReleaseAwareTaskExecutor, TaskExecutorStats {
+
+    private static final Executor MAIN_THREAD;
+
+    /**
+     * io tasks block, running them on workers would stall the work-stealing pool.
+     */
+    private static final Executor IO_THREAD_POOL_EXECUTOR;
+
+    static {
+        MAIN_THREAD = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "Main#" + mCount.incrementAndGet());
+            }
+        });
+
+        IO_THREAD_POOL_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "IO#" + mCount.incrementAndGet());
+            }
+        });
+    }
+
+    private final ForkJoinPool mForkJoinPool;
+
+    public ForkJoinExecutor() {
+        this(ThreadPools.availableProcessors());
+    }
+
+    public ForkJoinExecutor(int parallelism) {
+        // async mode: forked tasks are never joined, so run them in fifo order.
+        this.mForkJoinPool = new ForkJoinPool(Math.max(1, parallelism), new WorkerThreadFactory(), null, true);
+    }
+
+    @Override
+    public void execute(int threadMode, Runnable task) {
+        switch (threadMode) {
+            case Task.THREAD_MODE_UI_BLOCK:
+            case Task.THREAD_MODE_UI_ENQUEUE:
+            case Task.THREAD_MODE_UI_IDLE:
+                MAIN_THREAD.execute(task);
+                break;
+
+            case Task.THREAD_MODE_ASYNC:
+                executeAsync(task);
+                break;
+
+            case Task.THREAD_MODE_IO:
+                IO_THREAD_POOL_EXECUTOR.execute(task);
+                break;
+
+            default:
+                // ignore unknown thread mode
+                break;
+        }
+    }
+
+    private void executeAsync(Runnable task) {
+        final Thread thread = Thread.currentThread();
+        if (thread instanceof WorkerThread && ((WorkerThread) thread).getPool() == mForkJoinPool) {
+            final WorkerThread worker = (WorkerThread) thread;
+            if (worker.mRunning && worker.mReleasing && worker.mContinuation == null) {
+                // run it inline after the current task.
+                worker.mContinuation = task;
+            } else {
+                // push to the local deque.
+                new AsyncTask(task).fork();
+            }
+        } else {
+            mForkJoinPool.execute(new AsyncTask(task));
+        }
+    }
+
+    @Override
+    public boolean beginReleaseChildren() {
+        final Thread thread = Thread.currentThread();
+        if (!(thread instanceof WorkerThread)) {
+            return false;
+        }
+        final WorkerThread worker = (WorkerThread) thread;
+        final boolean previous = worker.mReleasing;
+        worker.mReleasing = true;
+        return previous;
+    }
+
+    @Override
+    public void endReleaseChildren(boolean previous) {
+        final Thread thread = Thread.currentThread();
+        if (thread instanceof WorkerThread) {
+            ((WorkerThread) thread).mReleasing = previous;
+        }
+    }
+
+    @Override
+    public int getQueueDepth(int threadMode) {
+        if (threadMode == Task.THREAD_MODE_ASYNC) {
+            return (int) Math.min(Integer.MAX_VALUE, mForkJoinPool.getQueuedSubmissionCount() + mForkJoinPool.getQueuedTaskCount());
+        }
+        return ThreadPools.queueDepth(getExecutor(threadMode));
+    }
+
+    @Override
+    public int getActiveThreadCount(int threadMode) {
+        if (threadMode == Task.THREAD_MODE_ASYNC) {
+            return mForkJoinPool.getActiveThreadCount();
+        }
+        return ThreadPools.activeThreadCount(getExecutor(threadMode));
+    }
+
+    @Override
+    public long getRejectedCount(int threadMode) {
+        return ThreadPools.rejectedCount(getExecutor(threadMode));
+    }
+
+    private Executor getExecutor(int threadMode) {
+        switch (threadMode) {
+            case Task.THREAD_MODE_ASYNC:
+                return mForkJoinPool;
+
+            case Task.THREAD_MODE_IO:
+                return IO_THREAD_POOL_EXECUTOR;
+
+            default:
+                return MAIN_THREAD;
+        }
+    }
+
+    private static class AsyncTask extends RecursiveAction {
+        private final Runnable mTask;
+
+        AsyncTask(Runnable task) {
+            this.mTask = task;
+        }
+
+        @Override
+        protected void compute() {
+            final WorkerThread worker = (WorkerThread) Thread.currentThread();
+            // a task may be computed nested in another one when the worker helps a join.
+            final boolean running = worker.mRunning;
+            final boolean releasing = worker.mReleasing;
+            final Runnable continuation = worker.mContinuation;
+            worker.mRunning = true;
+            worker.mReleasing = false;
+            worker.mContinuation = null;
+
+            try {
+                // trampoline instead of recursion, so deep chains do not overflow the stack.
+                Runnable next = mTask;
+                while (next != null) {
+                    next.run();
+                    next = worker.mContinuation;
+                    worker.mContinuation = null;
+                }
+            } finally {
+                // do not lose the continuation when a task throws.
+                if (worker.mContinuation != null) {
+                    new AsyncTask(worker.mContinuation).fork();
+                }
+                worker.mRunning = running;
+                worker.mReleasing = releasing;
+                worker.mContinuation = continuation;
+            }
+        }
+    }
+
+    private static class WorkerThread extends ForkJoinWorkerThread {
+        /**
+         * only accessed by the worker itself.
+         */
+        boolean mRunning;
+        /**
+         * notifying the children of a completed task, only then a ready task becomes the continuation.
+         */
+        boolean mReleasing;
+        Runnable mContinuation;
+
+        WorkerThread(ForkJoinPool pool) {
+            super(pool);
+        }
+    }
+
+    private static class WorkerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        @Override
+        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+            final WorkerThread thread = new WorkerThread(pool);
+            thread.setName("Async#" + mCount.incrementAndGet());
+            return thread;
+        }
+    }
+}
@@ -1,17 +1,19 @@
 package com.coofee.dep.executor;
 
+import com.coofee.dep.GraphAwareTaskExecutor;
+import com.coofee.dep.InlineExecutionPolicy;
 import com.coofee.dep.Task;
-import com.coofee.dep.TaskExecutor;
+import com.coofee.dep.TaskExecutorStats;
 
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
 import java.util.concurrent.SynchronousQueue;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
-public class JavaExecutor implements TaskExecutor {
+public class JavaExecutor implements GraphAwareTaskExecutor, InlineExecutionPolicy, TaskExecutorStats {
 
     private static final int CORE_POOL_SIZE = 1;
     private static final int MAXIMUM_POOL_SIZE = 20;
@@ -20,28 +22,59 @@ public class JavaExecutor implements TaskExecutor {
     private static final Executor MAIN_THREAD;
     private static final Executor THREAD_POOL_EXECUTOR;
 
+    /**
+     * the thread simulating ui thread.
+     */
+    private static volatile Thread sMainThread;
+
     static {
-        MAIN_THREAD = Executors.newSingleThreadExecutor(new ThreadFactory() {
+        // ui tasks queue by priority like on the async pool.
+        MAIN_THREAD = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
             private final AtomicInteger mCount = new AtomicInteger(1);
 
             @Override
             public Thread newThread(Runnable r) {
-                return new Thread(r, "Main#" + mCount.incrementAndGet());
+                final Thread thread = new Thread(r, "Main#" + mCount.incrementAndGet());
+                sMainThread = thread;
+                return thread;
             }
         });
 
         ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
                 CORE_POOL_SIZE, MAXIMUM_POOL_SIZE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
-                new SynchronousQueue<Runnable>(), new ThreadFactory() {
+                new SynchronousQueue<Runnable>(), new AsyncThreadFactory(), new ThreadPools.CountingAbortPolicy());
+        THREAD_POOL_EXECUTOR = threadPoolExecutor;
+    }
 
-            private final AtomicInteger mCount = new AtomicInteger(1);
+    private final ThreadPoolExecutor mAdaptiveThreadPoolExecutor;
 
-            @Override
-            public Thread newThread(Runnable r) {
-                return new Thread(r, "Async#" + mCount.incrementAndGet());
-            }
-        });
-        THREAD_POOL_EXECUTOR = threadPoolExecutor;
+    public JavaExecutor() {
+        this(false);
+    }
+
+    /**
+     * @param adaptivePoolSize if true, async tasks run in a pool sized by the max parallel async task count
+     *                         of the started task set capped by core count, where ready tasks wait by their
+     *                         priority, instead of a pool of up to 20 threads which starts every task at once.
+     */
+    public JavaExecutor(boolean adaptivePoolSize) {
+        if (adaptivePoolSize) {
+            ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
+                    CORE_POOL_SIZE, CORE_POOL_SIZE, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                    new PriorityBlockingQueue<Runnable>(), new AsyncThreadFactory());
+            threadPoolExecutor.allowCoreThreadTimeOut(true);
+            mAdaptiveThreadPoolExecutor = threadPoolExecutor;
+        } else {
+            mAdaptiveThreadPoolExecutor = null;
+        }
+    }
+
+    @Override
+    public void prepareTaskGraph(Task task) {
+        if (mAdaptiveThreadPoolExecutor != null) {
+            ThreadPools.resizeForGraph(mAdaptiveThreadPoolExecutor, task);
+        }
     }
 
     @Override
@@ -50,10 +83,19 @@ public class JavaExecutor implements TaskExecutor {
             case Task.THREAD_MODE_UI_BLOCK:
             case Task.THREAD_MODE_UI_ENQUEUE:
             case Task.THREAD_MODE_UI_IDLE:
-                MAIN_THREAD.execute(task);
+                MAIN_THREAD.execute(ThreadPools.prioritized(task));
                 break;
 
             case Task.THREAD_MODE_ASYNC:
+                if (mAdaptiveThreadPoolExecutor != null) {
+                    mAdaptiveThreadPoolExecutor.execute(ThreadPools.prioritized(task));
+                } else {
+                    THREAD_POOL_EXECUTOR.execute(task);
+                }
+                break;
+
+            case Task.THREAD_MODE_IO:
+                // io tasks block, never let them take threads of the adaptive pool.
                 THREAD_POOL_EXECUTOR.execute(task);
                 break;
 
@@ -62,4 +104,57 @@ public class JavaExecutor implements TaskExecutor {
                 break;
         }
     }
+
+    @Override
+    public boolean canExecuteInline(int threadMode) {
+        switch (threadMode) {
+            case Task.THREAD_MODE_UI_BLOCK:
+            case Task.THREAD_MODE_UI_ENQUEUE:
+            case Task.THREAD_MODE_UI_IDLE:
+                return Thread.currentThread() == sMainThread;
+
+            default:
+                return true;
+        }
+    }
+
+    @Override
+    public int getQueueDepth(int threadMode) {
+        return ThreadPools.queueDepth(getExecutor(threadMode));
+    }
+
+    @Override
+    public int getActiveThreadCount(int threadMode) {
+        return ThreadPools.activeThreadCount(getExecutor(threadMode));
+    }
+
+    @Override
+    public long getRejectedCount(int threadMode) {
+        return ThreadPools.rejectedCount(getExecutor(threadMode));
+    }
+
+    private Executor getExecutor(int threadMode) {
+        switch (threadMode) {
+            case Task.THREAD_MODE_UI_BLOCK:
+            case Task.THREAD_MODE_UI_ENQUEUE:
+            case Task.THREAD_MODE_UI_IDLE:
+                return MAIN_THREAD;
+
+            case Task.THREAD_MODE_ASYNC:
+                return mAdaptiveThreadPoolExecutor != null ? mAdaptiveThreadPoolExecutor : THREAD_POOL_EXECUTOR;
+
+            default:
+                return THREAD_POOL_EXECUTOR;
+        }
+    }
+
+    private static class AsyncThreadFactory implements ThreadFactory {
+
+        private final AtomicInteger mCount = new AtomicInteger(1);
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "Async#" + mCount.incrementAndGet());
+        }
+    }
 }
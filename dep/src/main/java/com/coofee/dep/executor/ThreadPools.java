@@ -0,0 +1,124 @@
+package com.coofee.dep.executor;
+
+import com.coofee.dep.Log;
+import com.coofee.dep.Task;
+import com.coofee.dep.TaskExecutorStats;
+import com.coofee.dep.TaskGraph;
+import com.coofee.dep.TaskRunnable;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicLong;
+
+final class ThreadPools {
+    private static final String TAG = "Dep.ThreadPools";
+
+    private static final AtomicLong PRIORITY_SEQUENCE = new AtomicLong();
+
+    private ThreadPools() {
+    }
+
+    static int availableProcessors() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * size the pool to the max parallel async task count of the graph, capped by core count.
+     * the pool only shrinks when it is idle, so a running graph never loses its threads.
+     */
+    static void resizeForGraph(ThreadPoolExecutor executor, Task task) {
+        final int poolSize = TaskGraph.estimatePoolSize(task, availableProcessors());
+        synchronized (executor) {
+            final int currentPoolSize = executor.getMaximumPoolSize();
+            if (poolSize > currentPoolSize) {
+                executor.setMaximumPoolSize(poolSize);
+                executor.setCorePoolSize(poolSize);
+            } else if (poolSize < currentPoolSize && executor.getActiveCount() == 0) {
+                executor.setCorePoolSize(poolSize);
+                executor.setMaximumPoolSize(poolSize);
+            }
+        }
+        Log.d(TAG, "resizeForGraph; task={}, poolSize={}", task, executor.getMaximumPoolSize());
+    }
+
+    static int queueDepth(Executor executor) {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getQueue().size();
+        }
+        return TaskExecutorStats.UNKNOWN;
+    }
+
+    static int activeThreadCount(Executor executor) {
+        if (executor instanceof ThreadPoolExecutor) {
+            return ((ThreadPoolExecutor) executor).getActiveCount();
+        }
+        return TaskExecutorStats.UNKNOWN;
+    }
+
+    static long rejectedCount(Executor executor) {
+        if (executor instanceof ThreadPoolExecutor) {
+            final RejectedExecutionHandler handler = ((ThreadPoolExecutor) executor).getRejectedExecutionHandler();
+            if (handler instanceof CountingAbortPolicy) {
+                return ((CountingAbortPolicy) handler).mRejectedCount.get();
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * wrap the task for a pool queued by a {@link java.util.concurrent.PriorityBlockingQueue}.
+     */
+    static Runnable prioritized(Runnable task) {
+        return task instanceof PriorityRunnable ? task : new PriorityRunnable(task, PRIORITY_SEQUENCE.getAndIncrement());
+    }
+
+    /**
+     * orders ready tasks by the effective priority of their task, then first in first out.
+     */
+    static final class PriorityRunnable implements Runnable, Comparable<PriorityRunnable> {
+        final Runnable task;
+        final int priority;
+        final long sequence;
+
+        PriorityRunnable(Runnable task, long sequence) {
+            this.task = task;
+            this.priority = (task instanceof TaskRunnable
+                    ? ((TaskRunnable) task).getTask().getEffectivePriority() : Task.PRIORITY_DEFAULT);
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        @Override
+        public int compareTo(PriorityRunnable other) {
+            // higher priority first, then first in first out.
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+
+            if (sequence != other.sequence) {
+                return sequence < other.sequence ? -1 : 1;
+            }
+
+            return 0;
+        }
+    }
+
+    /**
+     * same as {@link ThreadPoolExecutor.AbortPolicy}, but counts the rejected tasks.
+     */
+    static class CountingAbortPolicy implements RejectedExecutionHandler {
+        private final AtomicLong mRejectedCount = new AtomicLong();
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            mRejectedCount.incrementAndGet();
+            throw new RejectedExecutionException("Task " + r + " rejected from " + executor);
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.coofee.dep.executor;
+
+import com.coofee.dep.Log;
+import com.coofee.dep.Task;
+import com.coofee.dep.TaskExecutor;
+import com.coofee.dep.TaskExecutorStats;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * jvm executor for graphs with many blocking tasks: {@link Task#THREAD_MODE_IO} tasks run on virtual threads,
+ * {@link Task#THREAD_MODE_ASYNC} tasks run on a pool of core count platform threads.
+ * so hundreds of io tasks can block at the same time without growing the platform thread count.
+ * <p>
+ * virtual threads are looked up by reflection, on a jvm without them (or on android) io tasks fall back to
+ * an elastic pool of platform threads.
+ */
+public class VirtualThreadExecutor implements TaskExecutor, TaskExecutorStats {
+    private static final String TAG = "Dep.VirtualThreadExecutor";
+
+    private static final int KEEP_ALIVE_SECONDS = 3;
+
+    private static final Executor MAIN_THREAD;
+
+    static {
+        MAIN_THREAD = new ThreadPoolExecutor(1, 1, 0L, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "Main#" + mCount.incrementAndGet());
+            }
+        });
+    }
+
+    private final ThreadPoolExecutor mThreadPoolExecutor;
+
+    private final ExecutorService mIOExecutor;
+
+    public VirtualThreadExecutor() {
+        this(ThreadPools.availableProcessors());
+    }
+
+    public VirtualThreadExecutor(int asyncThreadCount) {
+        final int poolSize = Math.max(1, asyncThreadCount);
+        this.mThreadPoolExecutor = new ThreadPoolExecutor(poolSize, poolSize,
+                KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                return new Thread(r, "Async#" + mCount.incrementAndGet());
+            }
+        });
+        this.mThreadPoolExecutor.allowCoreThreadTimeOut(true);
+        this.mIOExecutor = newIOExecutor();
+    }
+
+    /**
+     * @return true if io tasks run on virtual threads.
+     */
+    public boolean isVirtual() {
+        return !(mIOExecutor instanceof ThreadPoolExecutor);
+    }
+
+    private static ExecutorService newIOExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (Throwable e) {
+            Log.d(TAG, "virtual threads are not supported, fall back to platform threads.", e);
+        }
+
+        return Executors.newCachedThreadPool(new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger(1);
+
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, "IO#" + mCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    @Override
+    public void execute(int threadMode, Runnable task) {
+        switch (threadMode) {
+            case Task.THREAD_MODE_UI_BLOCK:
+            case Task.THREAD_MODE_UI_ENQUEUE:
+            case Task.THREAD_MODE_UI_IDLE:
+                MAIN_THREAD.execute(task);
+                break;
+
+            case Task.THREAD_MODE_ASYNC:
+                mThreadPoolExecutor.execute(task);
+                break;
+
+            case Task.THREAD_MODE_IO:
+                mIOExecutor.execute(task);
+                break;
+
+            default:
+                // ignore unknown thread mode
+                break;
+        }
+    }
+
+    @Override
+    public int getQueueDepth(int threadMode) {
+        return ThreadPools.queueDepth(getExecutor(threadMode));
+    }
+
+    @Override
+    public int getActiveThreadCount(int threadMode) {
+        return ThreadPools.activeThreadCount(getExecutor(threadMode));
+    }
+
+    @Override
+    public long getRejectedCount(int threadMode) {
+        return ThreadPools.rejectedCount(getExecutor(threadMode));
+    }
+
+    private Executor getExecutor(int threadMode) {
+        switch (threadMode) {
+            case Task.THREAD_MODE_ASYNC:
+                return mThreadPoolExecutor;
+
+            case Task.THREAD_MODE_IO:
+                // unknown for virtual threads.
+                return mIOExecutor;
+
+            default:
+                return MAIN_THREAD;
+        }
+    }
+}
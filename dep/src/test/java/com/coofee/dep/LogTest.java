@@ -0,0 +1,16 @@
+package com.coofee.dep;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class LogTest {
+
+    @Test
+    public void testFormat() {
+        assertEquals("task=task_1", Log.format("task={}", "task_1", null, null));
+        assertEquals("task=task_1, count=3, result=null.", Log.format("task={}, count={}, result={}.", "task_1", 3, null));
+        assertEquals("no args", Log.format("no args", "task_1", null, null));
+        assertEquals("abc{}", Log.format("{}{}{}{}", "a", "b", "c"));
+    }
+}
@@ -0,0 +1,162 @@
+package com.coofee.dep;
+
+import com.coofee.dep.executor.JavaExecutor;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TaskDurationProfileTest {
+
+    @BeforeClass
+    public static void init() {
+        TaskManager.init(new JavaExecutor());
+    }
+
+    @Test
+    public void testRecordAndLoad() throws Exception {
+        final File file = newProfileFile();
+        final TaskDurationProfile profile = TaskDurationProfile.load(file);
+        assertEquals(-1, profile.getRunNanos("task_1"));
+
+        profile.record("task_1", 10, 100);
+        profile.record("task_1", 20, 200);
+        profile.record("task_2", 5, 50);
+        assertEquals(130, profile.getRunNanos("task_1"));
+        assertEquals(13, profile.getQueueWaitNanos("task_1"));
+
+        profile.flush();
+        waitForFile(file);
+
+        final TaskDurationProfile loadedProfile = TaskDurationProfile.load(file);
+        assertEquals(130, loadedProfile.getRunNanos("task_1"));
+        assertEquals(50, loadedProfile.getRunNanos("task_2"));
+
+        // append a record and load again, the last record wins.
+        final long length = file.length();
+        loadedProfile.record("task_2", 5, 150);
+        loadedProfile.flush();
+        waitForFileLength(file, length);
+        assertEquals(80, TaskDurationProfile.load(file).getRunNanos("task_2"));
+    }
+
+    @Test
+    public void testLoadBrokenFile() throws Exception {
+        final File file = newProfileFile();
+        final FileOutputStream output = new FileOutputStream(file);
+        output.write(new byte[]{1, 2, 3});
+        output.close();
+
+        assertEquals(-1, TaskDurationProfile.load(file).getRunNanos("task_1"));
+    }
+
+    @Test
+    public void testRewriteTruncatedFile() throws Exception {
+        final File file = newProfileFile();
+        final TaskDurationProfile profile = TaskDurationProfile.load(file);
+        profile.record("task_1", 10, 100);
+        profile.flush();
+        waitForFile(file);
+        final long length = file.length();
+        profile.record("task_2", 20, 200);
+        profile.flush();
+        waitForFileLength(file, length);
+
+        // cut the second record in the middle, like a run killed while writing.
+        final RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        randomAccessFile.setLength(length + 5);
+        randomAccessFile.close();
+
+        final TaskDurationProfile truncatedProfile = TaskDurationProfile.load(file);
+        assertEquals(100, truncatedProfile.getRunNanos("task_1"));
+        assertEquals(-1, truncatedProfile.getRunNanos("task_2"));
+
+        // appending after the torn bytes would misalign the new record, the file is rewritten instead.
+        truncatedProfile.record("task_3", 30, 300);
+        truncatedProfile.flush();
+        waitForFileLength(file, length + 5);
+
+        final TaskDurationProfile loadedProfile = TaskDurationProfile.load(file);
+        assertEquals(100, loadedProfile.getRunNanos("task_1"));
+        assertEquals(300, loadedProfile.getRunNanos("task_3"));
+    }
+
+    @Test
+    public void testRewriteUnknownFile() throws Exception {
+        final File file = newProfileFile();
+        final FileOutputStream output = new FileOutputStream(file);
+        output.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8});
+        output.close();
+
+        final TaskDurationProfile profile = TaskDurationProfile.load(file);
+        profile.record("task_1", 10, 100);
+        profile.flush();
+        waitForFileLength(file, 8);
+
+        assertEquals(100, TaskDurationProfile.load(file).getRunNanos("task_1"));
+    }
+
+    @Test
+    public void testRecordOnlyCompletedCallable() throws Exception {
+        final Task<String> parent = new Task<>("profile_parent", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                throw new IllegalStateException("profile_parent");
+            }
+        }, Task.THREAD_MODE_ASYNC);
+        final Callable<String> callable = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return "profile";
+            }
+        };
+        final Task<String> child = TaskFactory.from("profile_child", callable, true);
+        parent.before(child);
+        final Task<String> cancelled = TaskFactory.from("profile_cancelled", callable, true);
+
+        parent.execute();
+        assertTrue(child.waitForTaskResult().error() instanceof Task.ParentTaskError);
+        assertTrue(cancelled.cancel());
+
+        final TaskDurationProfile profile = TaskDurationProfile.load(newProfileFile());
+        final TaskManager taskManager = new TaskManager(new JavaExecutor(), profile);
+        taskManager.onTaskCompleted(parent);
+        taskManager.onTaskCompleted(child);
+        taskManager.onTaskCompleted(cancelled);
+
+        // the callable of the parent ran, failing is a real sample; the others never ran.
+        assertTrue(profile.getRunNanos("profile_parent") >= 0);
+        assertEquals(-1, profile.getRunNanos("profile_child"));
+        assertEquals(-1, profile.getRunNanos("profile_cancelled"));
+    }
+
+    private static File newProfileFile() throws IOException {
+        final File file = File.createTempFile("dep_profile", ".bin");
+        assertTrue(file.delete());
+        file.deleteOnExit();
+        return file;
+    }
+
+    private static void waitForFile(File file) throws InterruptedException {
+        for (int i = 0; i < 100 && !file.exists(); i++) {
+            Thread.sleep(20);
+        }
+        // the writer may still be writing.
+        Thread.sleep(50);
+    }
+
+    private static void waitForFileLength(File file, long length) throws InterruptedException {
+        for (int i = 0; i < 100 && file.length() == length; i++) {
+            Thread.sleep(20);
+        }
+        Thread.sleep(50);
+    }
+}
@@ -0,0 +1,100 @@
+package com.coofee.dep;
+
+import com.coofee.dep.executor.JavaExecutor;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TaskFuturesTest {
+
+    @BeforeClass
+    public static void beforeClass() {
+        TaskManager.init(new JavaExecutor());
+    }
+
+    private static Task<String> newTask(final String name, final long sleepMillis, final boolean fail) {
+        return TaskFactory.from(name, new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                Thread.sleep(sleepMillis);
+                if (fail) {
+                    throw new Exception(name + ".error");
+                }
+                return name + ".result";
+            }
+        }, true);
+    }
+
+    @Test
+    public void testWhenComplete() throws InterruptedException {
+        final Task<String> task = newTask("future_1", 50, false);
+        final AtomicReference<String> result = new AtomicReference<>();
+        final CountDownLatch latch = new CountDownLatch(2);
+        final TaskResultCallback<String> callback = new TaskResultCallback<String>() {
+            @Override
+            public void onTaskResult(TaskResult<String> taskResult) {
+                result.set(taskResult.result());
+                latch.countDown();
+            }
+        };
+
+        task.whenComplete(callback);
+        task.execute();
+        task.waitForTaskResult();
+        // added after the task is completed.
+        task.whenComplete(callback);
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertEquals("future_1.result", result.get());
+    }
+
+    @Test
+    public void testToCompletableFuture() throws Exception {
+        final Task<String> task = newTask("future_2", 10, false);
+        final Task<String> failTask = newTask("future_3", 10, true);
+        task.execute();
+        failTask.execute();
+
+        assertEquals("future_2.result", task.toCompletableFuture().get(1, TimeUnit.SECONDS));
+        try {
+            failTask.toCompletableFuture().get(1, TimeUnit.SECONDS);
+            fail();
+        } catch (ExecutionException e) {
+            assertEquals("future_3.error", e.getCause().getMessage());
+        }
+    }
+
+    @Test
+    public void testComposition() throws Exception {
+        final List<Task<String>> tasks = Arrays.asList(newTask("future_4", 10, false), newTask("future_5", 50, false));
+        final CountDownLatch latch = new CountDownLatch(1);
+        TaskFutures.whenAllComplete(tasks, new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        });
+
+        final TaskSet taskSet = new TaskSet.Builder("FutureTaskSet")
+                .add(tasks.get(0)).before(tasks.get(1))
+                .build();
+        TaskManager.getInstance().startTask(taskSet);
+
+        assertTrue(latch.await(1, TimeUnit.SECONDS));
+        assertEquals("future_5.result", TaskManager.getInstance().<String>getTaskResultAsync("future_5").get());
+        TaskFutures.allOf(tasks.get(0), taskSet).get(1, TimeUnit.SECONDS);
+        assertTrue(taskSet.toCompletableFuture().get() instanceof TaskSet.TaskSetResult);
+    }
+}
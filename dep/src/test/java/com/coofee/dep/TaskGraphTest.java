@@ -0,0 +1,319 @@
+package com.coofee.dep;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TaskGraphTest {
+
+    private static final Callable<String> NOOP = new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+            return "noop";
+        }
+    };
+
+    public Task<?> task1, task2, task3, task4, task5;
+
+    @Before
+    public void before() {
+        task1 = TaskFactory.from("task_1", NOOP, true);
+        task2 = TaskFactory.from("task_2", NOOP, true);
+        task3 = TaskFactory.from("task_3", NOOP);
+        task4 = TaskFactory.from("task_4", NOOP, true);
+        task5 = TaskFactory.from("task_5", NOOP, true);
+    }
+
+    @Test
+    public void testBuildBulkEdges() {
+        final TaskSet nested = new TaskSet.Builder("Nested")
+                .add(task4)
+                .build();
+        final TaskSet taskSet = new TaskSet.Builder("TaskSet1")
+                .add(task1).before(task2, task3, task2)
+                .add(task5).after(task2, nested)
+                .add(task1).before(task2)
+                .build();
+
+        // duplicated edges are wired once.
+        assertEquals(2, task1.getChildTasks().size());
+        assertEquals(1, task2.getParentTasks().size());
+        assertEquals(2, task5.getParentTasks().size());
+        assertEquals(1, nested.getChildTasks().size());
+        // task_1 and the nested task set start from root, task_3 and task_5 finish at end.
+        assertEquals(2, taskSet.headTask().getChildTasks().size());
+        assertEquals(2, taskSet.tailTask().getParentTasks().size());
+        assertEquals(task4, taskSet.getTask("task_4"));
+    }
+
+    @Test
+    public void testBuildWideGraph() {
+        final int size = 20000;
+        final Task<?> hub = TaskFactory.from("hub", NOOP, true);
+        final Task<?>[] children = new Task<?>[size];
+        for (int i = 0; i < size; i++) {
+            children[i] = TaskFactory.from("child_" + i, NOOP, true);
+        }
+
+        final TaskSet taskSet = new TaskSet.Builder("Wide")
+                .add(hub).before(children)
+                .build();
+        assertEquals(size, hub.getChildTasks().size());
+        assertEquals(size, taskSet.tailTask().getParentTasks().size());
+        assertEquals(size + 3, TaskGraph.topologicalSort(taskSet).size());
+    }
+
+    @Test
+    public void testBuildCycle() {
+        try {
+            new TaskSet.Builder("Cycle")
+                    .add(task1).before(task2)
+                    .add(task2).before(task3)
+                    .add(task3).before(task1)
+                    .add(task4)
+                    .build();
+            fail();
+        } catch (TaskSet.TaskCycleError e) {
+            assertEquals(Arrays.<Task>asList(task1, task2, task3), rotateTo(e.getCycle(), task1));
+            assertTrue(e.getMessage(), e.getMessage().contains("task_3 -> task_1"));
+        }
+        // nothing is wired.
+        assertEquals(0, task1.getChildTasks().size());
+    }
+
+    @Test
+    public void testBuildCycleThroughTaskSet() {
+        final TaskSet nested = new TaskSet.Builder("Nested")
+                .add(task1).before(task2)
+                .build();
+        try {
+            new TaskSet.Builder("Cycle")
+                    .add(nested).before(task3)
+                    .add(task3).before(nested)
+                    .build();
+            fail();
+        } catch (TaskSet.TaskCycleError e) {
+            // Nested.root -> task_1 -> task_2 -> Nested.end -> task_3
+            assertEquals(5, e.getCycle().size());
+            assertTrue(e.getMessage(), e.getMessage().contains("task_1 -> task_2"));
+        }
+    }
+
+    @Test
+    public void testBuildCycleThroughInnerTask() {
+        final TaskSet nested = new TaskSet.Builder("Nested")
+                .add(task1).before(task2)
+                .build();
+        try {
+            // task_3 waits for task_1 inside the task set, which waits for task_3 to start.
+            new TaskSet.Builder("Cycle")
+                    .add(nested).after(task3)
+                    .add(task3).after(task1)
+                    .build();
+            fail();
+        } catch (TaskSet.TaskCycleError e) {
+            assertEquals(Arrays.<Task>asList(task1, task3, nested.headTask()), rotateTo(e.getCycle(), task1));
+        }
+        // nothing is wired.
+        assertEquals(1, task1.getChildTasks().size());
+        assertEquals(0, task3.getChildTasks().size());
+    }
+
+    @Test
+    public void testTransitiveReduction() throws InterruptedException {
+        // task_1 -> task_2 -> task_3 and task_1 -> task_3, task_1 -> task_5 -> task_3
+        final TaskSet taskSet = new TaskSet.Builder("Reduction")
+                .transitiveReduction(true)
+                .add(task1).before(task2, task3, task5)
+                .add(task2).before(task3)
+                .add(task5).before(task3)
+                .build();
+
+        assertEquals(2, task1.getChildTasks().size());
+        assertFalse(task1.getChildTasks().contains(task3));
+        assertEquals(2, task3.getParentTasks().size());
+        assertEquals(4 + 2, TaskGraph.topologicalSort(taskSet).size());
+
+        taskSet.execute();
+        assertTrue(taskSet.waitForTaskResult().isSuccess());
+        assertTrue(task3.getTaskResult().isSuccess());
+    }
+
+    @Test
+    public void testFindTransitiveEdges() {
+        // a chain of 1500 tasks spans several blocks, every edge skipping one task is implied.
+        final int size = 1500;
+        final long[] edges = new long[size * 2];
+        int edgeCount = 0;
+        for (int i = 0; i + 1 < size; i++) {
+            edges[edgeCount++] = ((long) i << 32) | (i + 1);
+            if (i + 2 < size) {
+                edges[edgeCount++] = ((long) i << 32) | (i + 2);
+            }
+        }
+
+        final boolean[] transitive = TaskGraph.findTransitiveEdges(size, edges, edgeCount);
+        for (int i = 0; i < edgeCount; i++) {
+            final long distance = (edges[i] & 0xffffffffL) - (edges[i] >>> 32);
+            assertEquals(distance == 2, transitive[i]);
+        }
+        assertNull(TaskGraph.findCycle(size, edges, edgeCount));
+    }
+
+    private static List<Task> rotateTo(List<Task> cycle, Task first) {
+        final List<Task> rotated = new ArrayList<>(cycle);
+        Collections.rotate(rotated, -rotated.indexOf(first));
+        return rotated;
+    }
+
+    @Test
+    public void testComputeCriticalPath() {
+        TaskSet taskSet = new TaskSet.Builder("TaskSet1")
+                .add(task1).before(task2)
+                .add(task2).before(task3)
+                .add(task4)
+                .build();
+
+        // root -> task_1 -> task_2 -> task_3 -> end, root -> task_4 -> end
+        assertEquals(5, TaskGraph.computeCriticalPath(taskSet, TaskDurationEstimator.DEFAULT));
+        assertEquals(4, task1.getRank());
+        assertEquals(3, task2.getRank());
+        assertEquals(2, task3.getRank());
+        assertEquals(2, task4.getRank());
+    }
+
+    @Test
+    public void testComputeCriticalPathWithDuration() {
+        TaskSet taskSet = new TaskSet.Builder("TaskSet1")
+                .add(task1).before(task2)
+                .add(task4).before(task2)
+                .build();
+
+        TaskGraph.computeCriticalPath(taskSet, new TaskDurationEstimator() {
+            @Override
+            public long estimateDuration(Task task) {
+                return task == task4 ? 100 : 1;
+            }
+        });
+        assertEquals(102, task4.getRank());
+        assertEquals(3, task1.getRank());
+    }
+
+    @Test
+    public void testComputeCriticalPathNestedTaskSet() {
+        TaskSet taskSet1 = new TaskSet.Builder("TaskSet1")
+                .add(task1).before(task2)
+                .build();
+
+        TaskSet taskSet2 = new TaskSet.Builder("TaskSet2")
+                .add(task3).before(taskSet1)
+                .add(task4)
+                .build();
+
+        // root2 -> task_3 -> root1 -> task_1 -> task_2 -> end1 -> end2
+        assertEquals(7, TaskGraph.computeCriticalPath(taskSet2, TaskDurationEstimator.DEFAULT));
+        assertEquals(6, task3.getRank());
+        assertEquals(4, task1.getRank());
+    }
+
+    @Test
+    public void testPrintGraph() {
+        final Task<String> ui1 = TaskFactory.from("ui_1", NOOP, Task.THREAD_MODE_UI_BLOCK);
+        final Task<String> ui2 = TaskFactory.from("ui_2", NOOP, Task.THREAD_MODE_UI_ENQUEUE);
+        final TaskSet nested = new TaskSet.Builder("Nested")
+                .add(task2)
+                .build();
+        // ui_1 -> Nested(task_2) -> task_3, task_1 -> task_3, ui_2 is independent
+        final TaskSet taskSet = new TaskSet.Builder("Report")
+                .add(ui1).before(nested)
+                .add(nested).before(task3)
+                .add(task1).before(task3)
+                .add(ui2)
+                .build();
+
+        final TaskGraphReport report = TaskGraph.printGraph(taskSet, new TaskDurationEstimator() {
+            @Override
+            public long estimateDuration(Task task) {
+                final long millis = (task == ui1 ? 10 : task == task2 ? 30 : 5);
+                return TimeUnit.MILLISECONDS.toNanos(millis);
+            }
+        });
+
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(45), report.getCriticalPathNanos());
+        assertEquals(Arrays.<Task>asList(ui1, task2, task3), report.getCriticalTasks());
+        // task_3 runs on the ui thread too.
+        assertEquals(Arrays.<Task>asList(ui1, task3), report.getCriticalUiTasks());
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(35), report.getSlackNanos(task1));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(40), report.getSlackNanos(ui2));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(10), report.getEarliestStartNanos(task2));
+        assertEquals(-1, report.getSlackNanos(task5));
+
+        final String text = report.toText();
+        assertTrue(text, text.contains("graph=Report, criticalPathUs=45000"));
+        // edges through the root task of the nested task set are followed.
+        assertTrue(text, text.contains("* ui_1 [UI_BLOCK] durationUs=10000, startUs=0, slackUs=0 -> task_2"));
+        assertTrue(text, text.contains("  task_1 [ASYNC] durationUs=5000, startUs=0, slackUs=35000 -> task_3"));
+        assertTrue(text, text.endsWith("critical ui tasks=[ui_1, task_3]"));
+
+        final String dot = report.toDot();
+        assertTrue(dot, dot.startsWith("digraph \"Report\" {"));
+        assertTrue(dot, dot.contains("[label=\"ui_1\\nUI_BLOCK 10000us\\nslack 0us\", color=red, penwidth=2, style=filled"));
+        assertTrue(dot, dot.contains("[shape=point, xlabel=\"Nested.root\"]"));
+        assertTrue(dot, dot.contains("[color=red, penwidth=2];"));
+    }
+
+    @Test
+    public void testEstimateMaxParallelTaskCount() {
+        TaskSet taskSet = new TaskSet.Builder("TaskSet1")
+                .add(task1).before(task2).before(task3)
+                .add(task4).before(task3)
+                .add(task5)
+                .build();
+
+        // {task_2, task_3, task_5} or {task_1, task_4, task_5}
+        assertEquals(3, TaskGraph.estimateMaxParallelTaskCount(taskSet));
+        assertEquals(3, TaskGraph.estimatePoolSize(taskSet, 8));
+        assertEquals(2, TaskGraph.estimatePoolSize(taskSet, 2));
+    }
+
+    @Test
+    public void testEstimateMaxParallelTaskCountChain() {
+        TaskSet taskSet = new TaskSet.Builder("TaskSet1")
+                .add(task1).before(task2)
+                .add(task2).before(task3)
+                .add(task3).before(task4)
+                .build();
+
+        assertEquals(1, TaskGraph.estimateMaxParallelTaskCount(taskSet));
+    }
+
+    @Test
+    public void testEstimateMaxParallelTaskCountNestedTaskSet() {
+        TaskSet taskSet1 = new TaskSet.Builder("TaskSet1")
+                .add(task1)
+                .add(task2)
+                .add(task3)
+                .build();
+
+        TaskSet taskSet2 = new TaskSet.Builder("TaskSet2")
+                .add(task4).before(taskSet1)
+                .add(task5)
+                .build();
+
+        assertEquals(4, TaskGraph.estimateMaxParallelTaskCount(taskSet2));
+        // task_3 runs on ui thread.
+        assertEquals(3, TaskGraph.estimatePoolSize(taskSet2, 8));
+    }
+}
@@ -0,0 +1,85 @@
+package com.coofee.dep;
+
+import com.coofee.dep.executor.JavaExecutor;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TaskMetricsTest {
+
+    @BeforeClass
+    public static void init() {
+        TaskManager.init(new JavaExecutor());
+    }
+
+    @Test
+    public void testRecord() {
+        final TaskMetrics metrics = new TaskMetrics();
+        assertNull(metrics.getTaskStats("task_1"));
+
+        metrics.record("task_1", Task.THREAD_MODE_ASYNC, 10, 100, false);
+        metrics.record("task_1", Task.THREAD_MODE_ASYNC, 30, 300, true);
+        metrics.record("task_2", Task.THREAD_MODE_IO, 5, 50, false);
+
+        final TaskMetrics.Stats stats = metrics.getTaskStats("task_1");
+        assertEquals(2, stats.getCount());
+        assertEquals(1, stats.getFailureCount());
+        assertEquals(20, stats.getAverageQueueWaitNanos());
+        assertEquals(30, stats.getMaxQueueWaitNanos());
+        assertEquals(400, stats.getTotalRunNanos());
+        assertEquals(300, stats.getMaxRunNanos());
+
+        assertEquals(2, metrics.getThreadModeStats(Task.THREAD_MODE_ASYNC).getCount());
+        assertEquals(1, metrics.getThreadModeStats(Task.THREAD_MODE_IO).getCount());
+        assertEquals(0, metrics.getThreadModeStats(Task.THREAD_MODE_UI_BLOCK).getCount());
+        assertEquals(Arrays.asList("task_1", "task_2"), metrics.getTaskNames());
+
+        final String dump = metrics.dump(new JavaExecutor());
+        assertTrue(dump, dump.contains("task=task_1, count=2, failureCount=1"));
+        assertTrue(dump, dump.contains("queueDepth="));
+
+        metrics.reset();
+        assertNull(metrics.getTaskStats("task_1"));
+        assertEquals(0, metrics.getThreadModeStats(Task.THREAD_MODE_ASYNC).getCount());
+    }
+
+    @Test
+    public void testRecordCompletedTask() throws Exception {
+        final TaskMetrics metrics = new TaskMetrics();
+        TaskManager.getInstance().setTaskMetrics(metrics);
+        try {
+            final Task<String> task = new Task<>("metrics_task_1", new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    Thread.sleep(10);
+                    throw new IllegalStateException("metrics_task_1");
+                }
+            }, Task.THREAD_MODE_ASYNC);
+            task.execute();
+            task.waitForTaskResult();
+
+            final TaskMetrics.Stats stats = metrics.getTaskStats("metrics_task_1");
+            assertEquals(1, stats.getCount());
+            assertEquals(1, stats.getFailureCount());
+            assertTrue(stats.getMaxRunNanos() >= 10_000_000);
+            assertEquals(1, metrics.getThreadModeStats(Task.THREAD_MODE_ASYNC).getFailureCount());
+        } finally {
+            TaskManager.getInstance().setTaskMetrics(null);
+        }
+    }
+
+    @Test
+    public void testExecutorStats() throws Exception {
+        final TaskExecutorStats stats = new JavaExecutor(true);
+        assertEquals(0, stats.getQueueDepth(Task.THREAD_MODE_ASYNC));
+        assertEquals(0, stats.getActiveThreadCount(Task.THREAD_MODE_ASYNC));
+        assertEquals(0, stats.getRejectedCount(Task.THREAD_MODE_IO));
+    }
+}
@@ -0,0 +1,176 @@
+package com.coofee.dep;
+
+import com.coofee.dep.executor.JavaExecutor;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class TaskPlanTest {
+
+    @BeforeClass
+    public static void beforeClass() {
+        TaskManager.init(new JavaExecutor());
+    }
+
+    @Test
+    public void testRunManyTimes() throws InterruptedException {
+        final AtomicInteger executeCount = new AtomicInteger();
+        final Callable<Integer> callable = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                Thread.sleep(5);
+                return executeCount.incrementAndGet();
+            }
+        };
+
+        final Task<?> task1 = TaskFactory.from("plan_1", callable, true);
+        final Task<?> task2 = TaskFactory.from("plan_2", callable, true);
+        final Task<?> task3 = TaskFactory.from("plan_3", callable);
+        final TaskSet nested = new TaskSet.Builder("PlanNested")
+                .add(TaskFactory.from("plan_4", callable, true))
+                .add(TaskFactory.from("plan_5", callable, true))
+                .build();
+
+        final TaskPlan plan = new TaskSet.Builder("Plan")
+                .add(task1).before(task2).before(task3)
+                .add(nested).after(task2)
+                .compile();
+
+        // concurrent runs of one plan.
+        final List<TaskPlan.Execution> executions = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            executions.add(plan.run());
+        }
+
+        for (TaskPlan.Execution execution : executions) {
+            assertTrue(execution.waitForTaskResult().isSuccess());
+            assertTrue(execution.getTaskResult("plan_5").isSuccess());
+        }
+        assertEquals(4 * 5, executeCount.get());
+        assertNull(plan.run().getTaskResult("missing"));
+    }
+
+    @Test
+    public void testParentTaskError() throws InterruptedException {
+        final TaskPlan plan = new TaskSet.Builder("PlanError")
+                .add(TaskFactory.from("plan_error_1", new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        throw new Exception("parent task error");
+                    }
+                }, true)).before(TaskFactory.from("plan_error_2", new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return "plan_error_2";
+                    }
+                }, true))
+                .compile();
+
+        final TaskPlan.Execution execution = plan.run();
+        assertTrue(execution.waitForTaskResult().isFailure());
+        assertTrue(execution.getTaskResult("plan_error_2").error() instanceof Task.ParentTaskError);
+    }
+
+    @Test
+    public void testCancel() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger executeCount = new AtomicInteger();
+        final Callable<Integer> callable = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return executeCount.incrementAndGet();
+            }
+        };
+        final Task<Integer> task2 = TaskFactory.from("plan_cancel_2", callable, true);
+        final TaskPlan plan = new TaskSet.Builder("PlanCancel")
+                .add(TaskFactory.from("plan_cancel_1", new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        started.countDown();
+                        release.await();
+                        return "plan_cancel_1";
+                    }
+                }, true)).before(task2)
+                .add(task2).before(TaskFactory.from("plan_cancel_3", callable, true))
+                .compile();
+
+        final TaskPlan.Execution execution = plan.run();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(execution.cancel());
+        assertFalse(execution.cancel());
+        assertTrue(execution.isCancelled());
+        release.countDown();
+
+        assertTrue(execution.waitForTaskResult().isFailure());
+        assertTrue(execution.getTaskResult("plan_cancel_1").error() instanceof Task.TaskCancelledError);
+        assertTrue(execution.getTaskResult("plan_cancel_2").error() instanceof Task.TaskCancelledError);
+        assertTrue(execution.getTaskResult("plan_cancel_3").error() instanceof Task.TaskCancelledError);
+        assertEquals(0, executeCount.get());
+
+        // other runs of the plan are not affected.
+        assertTrue(plan.run().waitForTaskResult().isSuccess());
+        assertEquals(2, executeCount.get());
+    }
+
+    @Test
+    public void testListener() throws InterruptedException {
+        final TaskPlan plan = new TaskSet.Builder("PlanListener")
+                .add(TaskFactory.from("plan_listener_1", new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        throw new Exception("parent task error");
+                    }
+                }, true)).before(TaskFactory.from("plan_listener_2", new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return "plan_listener_2";
+                    }
+                }, true))
+                .add(TaskFactory.from("plan_listener_3", new Callable<String>() {
+                    @Override
+                    public String call() throws Exception {
+                        return "plan_listener_3";
+                    }
+                }, true))
+                .compile();
+
+        final Map<String, TaskResult<?>> results = new ConcurrentHashMap<>();
+        final TaskPlan.Execution execution = plan.run(new TaskPlan.ExecutionListener() {
+            @Override
+            public void beforeExecute(TaskPlan.Execution execution, String taskName) {
+            }
+
+            @Override
+            public void afterExecute(TaskPlan.Execution execution, String taskName, TaskResult<?> taskResult) {
+                results.put(taskName, taskResult);
+            }
+
+            @Override
+            public void onCompleted(TaskPlan.Execution execution) {
+            }
+        });
+        assertTrue(execution.waitForTaskResult().isFailure());
+
+        // the result passed to the listener is the one kept by the run.
+        assertEquals(3, results.size());
+        assertSame(results.get("plan_listener_3"), execution.getTaskResult("plan_listener_3"));
+        assertEquals("plan_listener_3", execution.getTaskResult("plan_listener_3").result());
+        assertTrue(execution.getTaskResult("plan_listener_2").error() instanceof Task.ParentTaskError);
+    }
+}
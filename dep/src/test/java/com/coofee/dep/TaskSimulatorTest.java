@@ -0,0 +1,146 @@
+package com.coofee.dep;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TaskSimulatorTest {
+
+    private static final Callable<String> NOOP = new Callable<String>() {
+        @Override
+        public String call() throws Exception {
+            return "noop";
+        }
+    };
+
+    private final Map<String, Long> mDurations = new HashMap<>();
+
+    private final TaskDurationEstimator mEstimator = new TaskDurationEstimator() {
+        @Override
+        public long estimateDuration(Task task) {
+            final Long duration = mDurations.get(task.getName());
+            return duration == null ? 0 : duration;
+        }
+    };
+
+    private Task<String> task(String name, long duration, @Task.ThreadMode int threadMode) {
+        mDurations.put(name, duration);
+        return TaskFactory.from(name, NOOP, threadMode);
+    }
+
+    private TaskSimulator.Result simulate(Task task, int asyncThreadCount, int ioThreadCount, int policy) {
+        return new TaskSimulator.Builder()
+                .asyncThreadCount(asyncThreadCount)
+                .ioThreadCount(ioThreadCount)
+                .durationEstimator(mEstimator)
+                .policy(policy)
+                .build()
+                .simulate(task);
+    }
+
+    @Test
+    public void testThreadCount() {
+        final TaskSet taskSet = new TaskSet.Builder("ThreadCount")
+                .add(task("task_1", 10, Task.THREAD_MODE_ASYNC))
+                .add(task("task_2", 10, Task.THREAD_MODE_ASYNC))
+                .add(task("task_3", 10, Task.THREAD_MODE_ASYNC))
+                .add(task("task_4", 10, Task.THREAD_MODE_ASYNC))
+                .build();
+
+        TaskSimulator.Result result = simulate(taskSet, 2, 0, TaskSimulator.POLICY_FIFO);
+        assertEquals(20, result.getMakespanNanos());
+        assertEquals(10, result.getCriticalPathNanos());
+        assertEquals(1.0, result.getUtilization(Task.THREAD_MODE_ASYNC), 0.001);
+
+        result = simulate(taskSet, 8, 0, TaskSimulator.POLICY_FIFO);
+        assertEquals(10, result.getMakespanNanos());
+        assertEquals(0.5, result.getUtilization(Task.THREAD_MODE_ASYNC), 0.001);
+        assertEquals(0, result.getUtilization(Task.THREAD_MODE_UI_BLOCK), 0.001);
+    }
+
+    @Test
+    public void testCriticalPathPolicy() {
+        final Task<String> task1 = task("task_1", 10, Task.THREAD_MODE_ASYNC);
+        final Task<String> task2 = task("task_2", 10, Task.THREAD_MODE_ASYNC);
+        final Task<String> task3 = task("task_3", 10, Task.THREAD_MODE_ASYNC);
+        final TaskSet taskSet = new TaskSet.Builder("CriticalPath")
+                .add(task1).before(task2)
+                .add(task2).before(task3)
+                .add(task("task_4", 10, Task.THREAD_MODE_ASYNC))
+                .add(task("task_5", 10, Task.THREAD_MODE_ASYNC))
+                .build();
+
+        final TaskSimulator.Result result = simulate(taskSet, 2, 0, TaskSimulator.POLICY_CRITICAL_PATH);
+        // the chain starts at once and the short tasks fill the other thread.
+        assertEquals(30, result.getMakespanNanos());
+        assertEquals(0, result.getStartNanos(task1));
+        assertEquals(30, result.getEndNanos(task3));
+        assertEquals(30, result.getCriticalPathNanos());
+        assertEquals(Arrays.<Task>asList(task1, task2, task3), result.getCriticalPath());
+        assertTrue(result.toString(), result.toString().contains("criticalPath=[task_1, task_2, task_3]"));
+
+        assertTrue(simulate(taskSet, 2, 0, TaskSimulator.POLICY_FIFO).getMakespanNanos() >= 30);
+    }
+
+    @Test
+    public void testUiThread() {
+        final Task<String> idle = task("task_idle", 10, Task.THREAD_MODE_UI_IDLE);
+        final Task<String> async = task("task_async", 5, Task.THREAD_MODE_ASYNC);
+        final TaskSet taskSet = new TaskSet.Builder("UiThread")
+                .add(idle)
+                .add(task("task_block", 10, Task.THREAD_MODE_UI_BLOCK))
+                .add(task("task_enqueue", 10, Task.THREAD_MODE_UI_ENQUEUE))
+                .add(async)
+                .build();
+
+        // ui tasks share one thread however many async threads there are, idle tasks run last.
+        final TaskSimulator.Result result = simulate(taskSet, 8, 0, TaskSimulator.POLICY_FIFO);
+        assertEquals(30, result.getMakespanNanos());
+        assertEquals(20, result.getStartNanos(idle));
+        assertEquals(0, result.getStartNanos(async));
+        assertEquals(1.0, result.getUtilization(Task.THREAD_MODE_UI_IDLE), 0.001);
+    }
+
+    @Test
+    public void testIoThreads() {
+        final Task<String> io = task("task_io", 10, Task.THREAD_MODE_IO);
+        final TaskSet taskSet = new TaskSet.Builder("IoThreads")
+                .add(task("task_1", 10, Task.THREAD_MODE_ASYNC))
+                .add(io)
+                .build();
+
+        // without io threads the io task waits for the only async thread.
+        assertEquals(20, simulate(taskSet, 1, 0, TaskSimulator.POLICY_FIFO).getMakespanNanos());
+
+        final TaskSimulator.Result result = simulate(taskSet, 1, 2, TaskSimulator.POLICY_FIFO);
+        assertEquals(10, result.getMakespanNanos());
+        assertEquals(0.5, result.getUtilization(Task.THREAD_MODE_IO), 0.001);
+    }
+
+    @Test
+    public void testNestedTaskSet() {
+        final Task<String> task1 = task("task_1", 10, Task.THREAD_MODE_ASYNC);
+        final Task<String> task2 = task("task_2", 20, Task.THREAD_MODE_ASYNC);
+        final Task<String> task3 = task("task_3", 5, Task.THREAD_MODE_UI_BLOCK);
+        final TaskSet nested = new TaskSet.Builder("Nested")
+                .add(task1).before(task2)
+                .build();
+        final TaskSet taskSet = new TaskSet.Builder("TaskSet")
+                .add(nested).before(task3)
+                .build();
+
+        final TaskSimulator.Result result = simulate(taskSet, 4, 0, TaskSimulator.POLICY_FIFO);
+        assertEquals(35, result.getMakespanNanos());
+        assertEquals(30, result.getStartNanos(task3));
+        assertEquals(Arrays.<Task>asList(task1, task2, task3), result.getCriticalPath());
+        assertEquals(-1, result.getStartNanos(task("task_other", 1, Task.THREAD_MODE_ASYNC)));
+        // simulating does not execute anything.
+        assertEquals(null, task1.getTaskResult());
+    }
+}
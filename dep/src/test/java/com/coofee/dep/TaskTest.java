@@ -8,7 +8,24 @@ import org.junit.BeforeClass;
 import org.junit.Test;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 public class TaskTest {
 
@@ -105,8 +122,22 @@ public class TaskTest {
         builder.add(task3).after(task6);
         TaskSet taskSet = builder.build();
         wrapTaskSetMonitor(taskSet);
+        assertNull(taskSet.getTaskResult());
         taskSet.execute();
-        taskSet.waitForTaskResult();
+        final TaskResult<TaskSet.TaskSetResult> result = taskSet.waitForTaskResult();
+
+        // built once, with a read-only view of the task results.
+        assertSame(result, taskSet.getTaskResult());
+        final Map<String, TaskResult<?>> resultMap = result.result().getResultMap();
+        assertEquals(4, resultMap.size());
+        assertEquals("task_6.result", resultMap.get("task_6").result());
+        assertNull(resultMap.get("task_7"));
+        try {
+            resultMap.put("task_7", TaskResult.success(null));
+            fail();
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
     }
 
     @Test
@@ -242,6 +273,123 @@ public class TaskTest {
 //        }
     }
 
+    @Test
+    public void testFanInExecuteOnce() throws InterruptedException {
+        final AtomicInteger executeCount = new AtomicInteger();
+        final Task<Integer> sink = TaskFactory.from("fan_in_sink", new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return executeCount.incrementAndGet();
+            }
+        }, true);
+
+        TaskSet.Builder builder = new TaskSet.Builder("FanIn");
+        builder.add(sink);
+        for (int i = 0; i < 10; i++) {
+            builder.after(TaskFactory.from("fan_in_" + i, new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    Thread.sleep(10);
+                    return "fan_in";
+                }
+            }, true));
+        }
+        TaskSet taskSet = builder.build();
+        taskSet.execute();
+        taskSet.waitForTaskResult();
+
+        assertEquals(Task.STATE_COMPLETED, sink.getTaskState());
+        assertEquals(1, executeCount.get());
+    }
+
+    @Test
+    public void testTaskExecutionListener() {
+        final AtomicInteger count = new AtomicInteger();
+        final TaskExecutionListener listener = new TaskExecutionListener() {
+            @Override
+            public void beforeExecute(Task task) {
+                count.incrementAndGet();
+            }
+
+            @Override
+            public void afterExecute(Task task) {
+                count.incrementAndGet();
+            }
+        };
+        final TaskExecutionListener removedListener = new TaskExecutionListener() {
+            @Override
+            public void beforeExecute(Task task) {
+                count.addAndGet(100);
+            }
+
+            @Override
+            public void afterExecute(Task task) {
+                count.addAndGet(100);
+            }
+        };
+
+        final Task<String> task = TaskFactory.from("listener_task", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return null;
+            }
+        }, true);
+        assertTrue(task.addTaskExecutionListener(listener));
+        assertFalse(task.addTaskExecutionListener(listener));
+        assertTrue(task.addTaskExecutionListener(removedListener));
+        assertTrue(task.removeTaskExecutionListener(removedListener));
+        assertFalse(task.removeTaskExecutionListener(removedListener));
+
+        // run on the current thread, listeners are called after waiters are woken up.
+        task.innerExecute();
+        assertEquals(2, count.get());
+        assertTrue(task.getTaskResult().isSuccess());
+    }
+
+    @Test
+    public void testTaskIndex() {
+        final TaskManager taskManager = new TaskManager(new JavaExecutor());
+        final TaskSet nested = new TaskSet.Builder("IndexNested")
+                .add(task4).before(task5)
+                .build();
+        final TaskSet taskSet = new TaskSet.Builder("Index")
+                .add(task1).before(nested)
+                .build();
+        final TaskCondition condition = new TaskCondition() {
+        };
+
+        assertTrue(taskManager.addConditionTask(condition, taskSet));
+        assertEquals(task5, taskManager.getTask("task_5"));
+        assertEquals(nested, taskManager.getTask("IndexNested"));
+        // same task registered again.
+        assertTrue(taskManager.addConditionTask(condition, task4));
+        // another not completed task with a registered name.
+        assertFalse(taskManager.addConditionTask(condition, TaskFactory.from("task_5", TaskSet.EMPTY)));
+        assertEquals(task5, taskManager.getTask("task_5"));
+    }
+
+    @Test
+    public void testHelpingWaitOnMainThread() throws InterruptedException {
+        final Task<String> service = TaskFactory.from("help_service", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return "help_service.result";
+            }
+        }, Task.THREAD_MODE_UI_ENQUEUE);
+
+        // the ui task requests a service which is queued behind it on the single main thread.
+        final Task<String> task = TaskFactory.from("help_task", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                service.execute();
+                return service.waitForTaskResult().result();
+            }
+        });
+
+        task.execute();
+        assertEquals("help_service.result", task.waitForTaskResult().result());
+    }
+
     private static TaskSet wrapTaskSetMonitor(TaskSet taskSet) {
         taskSet.addTaskSetExecutionListener(new TaskSetExecutionListener() {
             @Override
@@ -268,6 +416,521 @@ public class TaskTest {
         return taskSet;
     }
 
+    @Test
+    public void testCancelNotStarted() throws InterruptedException {
+        final AtomicInteger executeCount = new AtomicInteger();
+        final Callable<Integer> callable = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return executeCount.incrementAndGet();
+            }
+        };
+        final Task<Integer> head = TaskFactory.from("cancel_head", callable, true);
+        final Task<Integer> middle = TaskFactory.from("cancel_middle", callable);
+        final Task<Integer> tail = TaskFactory.from("cancel_tail", callable, true);
+        head.before(middle);
+        middle.before(tail);
+
+        final Thread[] completedThread = new Thread[1];
+        tail.addTaskExecutionListener(new TaskExecutionListener() {
+            @Override
+            public void beforeExecute(Task task) {
+            }
+
+            @Override
+            public void afterExecute(Task task) {
+                completedThread[0] = Thread.currentThread();
+            }
+        });
+
+        assertTrue(head.cancel());
+        assertFalse(head.cancel());
+        assertTrue(head.isCancelled());
+
+        // the whole chain is completed at once on this thread, without executing anything.
+        assertEquals(Task.STATE_COMPLETED, tail.getTaskState());
+        assertSame(Thread.currentThread(), completedThread[0]);
+        assertEquals(0, executeCount.get());
+        assertTrue(head.getTaskResult().error() instanceof Task.TaskCancelledError);
+        assertTrue(middle.getTaskResult().error() instanceof Task.ParentTaskError);
+        assertTrue(tail.getTaskResult().error().getCause() instanceof Task.ParentTaskError);
+        assertFalse(tail.isCancelled());
+    }
+
+    @Test
+    public void testCancelRunning() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger interruptCount = new AtomicInteger();
+        final Task<String> running = TaskFactory.from("cancel_running", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                started.countDown();
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    interruptCount.incrementAndGet();
+                }
+                return "cancel_running";
+            }
+        }, true);
+        final Task<String> child = TaskFactory.from("cancel_running_child", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return "cancel_running_child";
+            }
+        }, true);
+        running.before(child);
+
+        running.execute();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(running.cancel(true));
+
+        assertTrue(child.waitForTaskResult().isFailure());
+        assertEquals(1, interruptCount.get());
+        // cancelled while running, whatever the callable returned.
+        assertTrue(running.getTaskResult().error() instanceof Task.TaskCancelledError);
+        assertTrue(child.getTaskResult().error() instanceof Task.ParentTaskError);
+        assertFalse(running.cancel(true));
+    }
+
+    @Test
+    public void testTaskSetCancel() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger executeCount = new AtomicInteger();
+        final Task<String> running = TaskFactory.from("set_cancel_running", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                started.countDown();
+                Thread.sleep(10_000);
+                return "set_cancel_running";
+            }
+        }, true);
+        final Callable<Integer> callable = new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return executeCount.incrementAndGet();
+            }
+        };
+        final Task<Integer> child = TaskFactory.from("set_cancel_child", callable, true);
+        final Task<Integer> grandChild = TaskFactory.from("set_cancel_grand_child", callable, true);
+        final TaskSet taskSet = new TaskSet.Builder("SetCancel")
+                .add(running).before(child)
+                .add(child).before(grandChild)
+                .build();
+
+        taskSet.execute();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(taskSet.cancel(true));
+        assertTrue(taskSet.isCancelled());
+
+        // the set completes at once, tasks not started are cancelled themselves.
+        assertEquals(Task.STATE_COMPLETED, taskSet.getTaskState());
+        final TaskResult<TaskSet.TaskSetResult> taskSetResult = taskSet.getTaskResult();
+        assertTrue(taskSetResult.isFailure());
+        assertTrue(taskSetResult.error().getCause() instanceof Task.TaskCancelledError);
+        assertTrue(child.getTaskResult().error() instanceof Task.TaskCancelledError);
+        assertTrue(grandChild.getTaskResult().error() instanceof Task.TaskCancelledError);
+        assertEquals(0, executeCount.get());
+
+        running.waitForTaskResult();
+        assertTrue(running.getTaskResult().error() instanceof Task.TaskCancelledError);
+        assertFalse(taskSet.cancel());
+    }
+
+    @Test
+    public void testTaskSetFailFast() throws InterruptedException {
+        final Exception failure = new Exception("fail fast");
+        final Task<String> failed = TaskFactory.from("fail_fast_failed", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                Thread.sleep(50);
+                throw failure;
+            }
+        }, true);
+        // a long running task stops by polling its cancellation.
+        final Task<?>[] self = new Task<?>[1];
+        final Task<String> polling = TaskFactory.from("fail_fast_polling", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                while (!self[0].isCancelled()) {
+                    Thread.sleep(5);
+                }
+                return "fail_fast_polling";
+            }
+        }, true);
+        self[0] = polling;
+        final AtomicInteger executeCount = new AtomicInteger();
+        final Task<Integer> child = TaskFactory.from("fail_fast_child", new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                return executeCount.incrementAndGet();
+            }
+        }, true);
+        final TaskSet taskSet = new TaskSet.Builder("FailFast")
+                .failFast(true)
+                .add(failed)
+                .add(polling).before(child)
+                .build();
+
+        taskSet.execute();
+        final TaskResult<TaskSet.TaskSetResult> taskSetResult = taskSet.waitForTaskResult();
+        assertTrue(taskSetResult.isFailure());
+        // the cancellation keeps the failure as its cause.
+        final Throwable cancelledError = taskSetResult.error().getCause();
+        assertTrue(cancelledError instanceof Task.TaskCancelledError);
+        assertSame(failure, cancelledError.getCause());
+
+        polling.waitForTaskResult();
+        assertTrue(polling.getTaskResult().error() instanceof Task.TaskCancelledError);
+        assertTrue(child.getTaskResult().error() instanceof Task.TaskCancelledError);
+        assertEquals(0, executeCount.get());
+        assertSame(failure, failed.getTaskResult().error());
+    }
+
+    @Test
+    public void testTaskTimeout() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final Task<String> hung = TaskFactory.from("timeout_hung", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                started.countDown();
+                try {
+                    Thread.sleep(10_000);
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                }
+                return "timeout_hung";
+            }
+        }, true);
+        hung.setTimeout(50, TimeUnit.MILLISECONDS);
+        final Task<String> child = TaskFactory.from("timeout_child", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return "timeout_child";
+            }
+        }, true);
+        hung.before(child);
+
+        hung.execute();
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        final TaskResult<String> childResult = child.waitForTaskResult();
+        assertTrue(childResult.error() instanceof Task.ParentTaskError);
+        assertTrue(hung.getTaskResult().error() instanceof Task.TaskTimeoutError);
+        assertTrue(hung.isCancelled());
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+        // the late result of the callable is dropped.
+        Thread.sleep(20);
+        assertTrue(hung.getTaskResult().error() instanceof Task.TaskTimeoutError);
+    }
+
+    @Test
+    public void testTaskSetTimeout() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final Task<String> hung = TaskFactory.from("set_timeout_hung", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                started.countDown();
+                // ignores interrupts, like a task stuck in native code.
+                while (release.getCount() > 0) {
+                    try {
+                        release.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                }
+                return "set_timeout_hung";
+            }
+        }, true);
+        final Task<String> done = TaskFactory.from("set_timeout_done", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return "set_timeout_done";
+            }
+        }, true);
+        final Task<String> child = TaskFactory.from("set_timeout_child", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return "set_timeout_child";
+            }
+        }, true);
+        final TaskSet taskSet = new TaskSet.Builder("SetTimeout")
+                .add(hung).before(child)
+                .add(done)
+                .build();
+        taskSet.setTimeout(50, TimeUnit.MILLISECONDS);
+
+        taskSet.execute();
+        // waiting before the hung task is started would help to run it on this thread.
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        final TaskResult<TaskSet.TaskSetResult> taskSetResult = taskSet.waitForTaskResult();
+        assertTrue(taskSetResult.isFailure());
+        assertTrue(taskSetResult.error().getCause() instanceof Task.TaskTimeoutError);
+        assertTrue(hung.getTaskResult().error() instanceof Task.TaskTimeoutError);
+        assertTrue(child.getTaskResult().error() instanceof Task.TaskTimeoutError);
+        assertTrue(done.getTaskResult().isSuccess());
+        release.countDown();
+    }
+
+    @Test
+    public void testWaitTimeout() throws InterruptedException, TimeoutException {
+        final CountDownLatch release = new CountDownLatch(1);
+        final Task<String> slow = TaskFactory.from("wait_timeout_slow", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                release.await();
+                return "wait_timeout_slow";
+            }
+        }, true);
+        TaskManager.getInstance().startTask(slow);
+
+        try {
+            slow.waitForTaskResult(20, TimeUnit.MILLISECONDS);
+            fail("should timeout");
+        } catch (TimeoutException expected) {
+        }
+        assertNull(TaskManager.getInstance().getTaskResult("wait_timeout_slow", 20, TimeUnit.MILLISECONDS));
+        assertFalse(TaskManager.getInstance().waitForCompleted(20, TimeUnit.MILLISECONDS));
+
+        release.countDown();
+        assertEquals("wait_timeout_slow", TaskManager.getInstance().getTaskResult("wait_timeout_slow", 5, TimeUnit.SECONDS));
+        assertEquals("wait_timeout_slow", slow.waitForTaskResult(0, TimeUnit.SECONDS).result());
+    }
+
+    private static Task<String> awaitTask(final String name, final CountDownLatch release) {
+        return TaskFactory.from(name, new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                release.await();
+                return name;
+            }
+        }, true);
+    }
+
+    private static TaskFilter namePrefix(final String prefix) {
+        return new TaskFilter() {
+            @Override
+            public boolean accept(Task task) {
+                return task.getName().startsWith(prefix);
+            }
+        };
+    }
+
+    @Test
+    public void testAwaitAll() throws InterruptedException {
+        final CountDownLatch release1 = new CountDownLatch(1);
+        final CountDownLatch release2 = new CountDownLatch(1);
+        final Task<String> task1 = awaitTask("await_all_1", release1);
+        final Task<String> task2 = awaitTask("await_all_2", release2);
+        final TaskFilter filter = namePrefix("await_all_");
+        final TaskManager taskManager = TaskManager.getInstance();
+
+        taskManager.startTask(task1);
+        assertFalse(taskManager.awaitAll(filter, 20, TimeUnit.MILLISECONDS));
+
+        // a task started during the wait is waited for too.
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                    taskManager.startTask(task2);
+                    release1.countDown();
+                    Thread.sleep(20);
+                    release2.countDown();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }).start();
+        assertTrue(taskManager.awaitAll(filter, 5, TimeUnit.SECONDS));
+        assertEquals(Task.STATE_COMPLETED, task1.getTaskState());
+        assertEquals(Task.STATE_COMPLETED, task2.getTaskState());
+
+        // nothing left to wait for.
+        taskManager.waitForCompleted(filter);
+        assertTrue(taskManager.awaitAll(filter, 0, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testAwaitAny() throws InterruptedException {
+        final CountDownLatch releaseSlow = new CountDownLatch(1);
+        final CountDownLatch releaseFast = new CountDownLatch(1);
+        final Task<String> slow = awaitTask("await_any_slow", releaseSlow);
+        final Task<String> fast = awaitTask("await_any_fast", releaseFast);
+        final TaskFilter filter = namePrefix("await_any_");
+        final TaskManager taskManager = TaskManager.getInstance();
+
+        taskManager.startTask(slow);
+        taskManager.startTask(fast);
+        assertNull(taskManager.awaitAny(filter, 20, TimeUnit.MILLISECONDS));
+        assertNull(taskManager.awaitAny(namePrefix("await_any_none"), 5, TimeUnit.SECONDS));
+
+        // only a task completed during the wait is returned.
+        releaseLater(releaseFast);
+        assertSame(fast, taskManager.awaitAny(filter, 5, TimeUnit.SECONDS));
+        assertFalse(Task.STATE_COMPLETED == slow.getTaskState());
+
+        releaseLater(releaseSlow);
+        assertSame(slow, taskManager.awaitAny(filter, 5, TimeUnit.SECONDS));
+        assertNull(taskManager.awaitAny(filter, 5, TimeUnit.SECONDS));
+    }
+
+    private static void releaseLater(final CountDownLatch release) {
+        new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+                release.countDown();
+            }
+        }).start();
+    }
+
+    @Test
+    public void testLazyTask() throws InterruptedException {
+        final Map<String, AtomicInteger> executeCounts = new ConcurrentHashMap<>();
+        final CountDownLatch release = new CountDownLatch(1);
+        final Task[] tasks = new Task[4];
+        for (int i = 0; i < tasks.length; i++) {
+            final String name = "lazy_" + i;
+            executeCounts.put(name, new AtomicInteger());
+            tasks[i] = TaskFactory.from(name, new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    executeCounts.get(name).incrementAndGet();
+                    release.await();
+                    return name;
+                }
+            }, true);
+        }
+        // lazy_0 -> lazy_1 -> lazy_2, lazy_3 depends on nothing.
+        final TaskSet taskSet = new TaskSet.Builder("LazyTaskSet")
+                .add(tasks[0]).before(tasks[1])
+                .add(tasks[1]).before(tasks[2])
+                .add(tasks[3])
+                .build();
+        final TaskManager taskManager = TaskManager.getInstance();
+        assertTrue(taskManager.addLazyTask(taskSet));
+        Thread.sleep(20);
+        assertEquals(0, executeCounts.get("lazy_0").get());
+
+        // concurrent requests of the same task share one execution.
+        final CountDownLatch requested = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    if ("lazy_1".equals(taskManager.getTaskResult("lazy_1"))) {
+                        requested.countDown();
+                    }
+                }
+            }).start();
+        }
+        Thread.sleep(20);
+        release.countDown();
+        assertTrue(requested.await(5, TimeUnit.SECONDS));
+        assertEquals(1, executeCounts.get("lazy_0").get());
+        assertEquals(1, executeCounts.get("lazy_1").get());
+        assertEquals(Task.STATE_NEW, tasks[2].getTaskState());
+        assertEquals(Task.STATE_NEW, tasks[3].getTaskState());
+        assertEquals(0, executeCounts.get("lazy_3").get());
+
+        // requesting the task set runs the rest of it.
+        final TaskSet.TaskSetResult taskSetResult = taskManager.getTaskResult("LazyTaskSet", 5, TimeUnit.SECONDS);
+        assertTrue(taskSetResult != null);
+        for (AtomicInteger executeCount : executeCounts.values()) {
+            assertEquals(1, executeCount.get());
+        }
+    }
+
+    @Test
+    public void testPriorityInheritance() {
+        final Callable<String> callable = new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return "priority";
+            }
+        };
+        final Task<String> analytics = TaskFactory.from("priority_analytics", callable, Task.THREAD_MODE_ASYNC, Task.PRIORITY_LOW);
+        final Task<String> config = TaskFactory.from("priority_config", callable, Task.THREAD_MODE_ASYNC);
+        final Task<String> firstScreen = TaskFactory.from("priority_first_screen", callable, Task.THREAD_MODE_ASYNC);
+        final Task<String> prefetch = TaskFactory.from("priority_prefetch", callable, Task.THREAD_MODE_ASYNC, Task.PRIORITY_LOW);
+        final TaskSet nested = new TaskSet.Builder("PriorityNested")
+                .add(config).before(firstScreen)
+                .build();
+        new TaskSet.Builder("Priority")
+                .add(analytics)
+                .add(nested).before(prefetch)
+                .build();
+        assertEquals(Task.PRIORITY_LOW, analytics.getEffectivePriority());
+        assertEquals(Task.PRIORITY_DEFAULT, config.getEffectivePriority());
+
+        // set after wiring, the tasks it depends on inherit it.
+        firstScreen.setPriority(Task.PRIORITY_HIGH);
+        assertEquals(Task.PRIORITY_HIGH, config.getEffectivePriority());
+        assertEquals(Task.PRIORITY_DEFAULT, config.getPriority());
+        assertEquals(Task.PRIORITY_LOW, analytics.getEffectivePriority());
+        assertEquals(Task.PRIORITY_LOW, prefetch.getEffectivePriority());
+
+        // a task set passes its priority to all of its tasks.
+        final Task<String> report = TaskFactory.from("priority_report", callable, Task.THREAD_MODE_ASYNC, Task.PRIORITY_LOW);
+        new TaskSet.Builder("PriorityReport").add(report).build().setPriority(Task.PRIORITY_HIGH);
+        assertEquals(Task.PRIORITY_HIGH, report.getEffectivePriority());
+    }
+
+    @Test
+    public void testPriorityQueue() throws InterruptedException {
+        // one async thread, so ready tasks queue up.
+        final JavaExecutor executor = new JavaExecutor(true);
+        final CountDownLatch release = new CountDownLatch(1);
+        executor.execute(Task.THREAD_MODE_ASYNC, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        });
+
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final CountDownLatch done = new CountDownLatch(4);
+        final Task[] tasks = new Task[4];
+        final String[] names = {"queue_low", "queue_default", "queue_high", "queue_low_needed"};
+        final int[] priorities = {Task.PRIORITY_LOW, Task.PRIORITY_DEFAULT, Task.PRIORITY_HIGH, Task.PRIORITY_LOW};
+        for (int i = 0; i < tasks.length; i++) {
+            final String name = names[i];
+            tasks[i] = TaskFactory.from(name, new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    order.add(name);
+                    done.countDown();
+                    return name;
+                }
+            }, Task.THREAD_MODE_ASYNC, priorities[i]);
+        }
+        // a high priority task depends on the last low priority one.
+        final Task<String> needing = TaskFactory.from("queue_needing", new Callable<String>() {
+            @Override
+            public String call() throws Exception {
+                return "queue_needing";
+            }
+        }, Task.THREAD_MODE_ASYNC, Task.PRIORITY_HIGH);
+        tasks[3].before(needing);
+
+        for (Task task : tasks) {
+            executor.execute(Task.THREAD_MODE_ASYNC, new TaskRunnable(task));
+        }
+        release.countDown();
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(Arrays.asList("queue_high", "queue_low_needed", "queue_default", "queue_low"), order);
+    }
+
     private static Task wrapMonitor(Task task) {
 //        task.addTaskExecutionListener(new TaskExecutionListener() {
 //            @Override
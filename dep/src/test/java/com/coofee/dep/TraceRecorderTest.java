@@ -0,0 +1,72 @@
+package com.coofee.dep;
+
+import com.coofee.dep.executor.JavaExecutor;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.concurrent.Callable;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TraceRecorderTest {
+
+    @BeforeClass
+    public static void beforeClass() {
+        TaskManager.init(new JavaExecutor());
+    }
+
+    @Test
+    public void testRecordTasks() throws InterruptedException {
+        final TraceRecorder traceRecorder = new TraceRecorder(64);
+        final Callable<Object> callable = new Callable<Object>() {
+            @Override
+            public Object call() throws Exception {
+                return null;
+            }
+        };
+        final TaskSet taskSet = new TaskSet.Builder("Trace")
+                .add(TaskFactory.from("trace_1", callable, true)).before(TaskFactory.from("trace\"2", callable))
+                .build();
+
+        TaskManager.getInstance().setTraceRecorder(traceRecorder);
+        try {
+            taskSet.execute();
+            taskSet.waitForTaskResult();
+        } finally {
+            TaskManager.getInstance().setTraceRecorder(null);
+        }
+
+        final String trace = traceRecorder.toChromeTrace();
+        assertTrue(trace.startsWith("{\"traceEvents\":[{\"name\":\"trace_1\",\"cat\":\"task\",\"ph\":\"i\""));
+        assertTrue(trace.contains("{\"name\":\"trace\\\"2\",\"cat\":\"task\",\"ph\":\"E\""));
+        assertTrue(trace.contains("\"args\":{\"name\":\"Main#"));
+        // root/end task of the task set are not recorded.
+        assertFalse(trace.contains("Trace.root"));
+    }
+
+    @Test
+    public void testRingBuffer() {
+        final TraceRecorder traceRecorder = new TraceRecorder(3);
+        assertEquals(4, traceRecorder.getCapacity());
+        for (int i = 0; i < 10; i++) {
+            traceRecorder.record(TraceRecorder.EVENT_START, "event_" + i, i * 1500L);
+        }
+
+        final String trace = traceRecorder.toChromeTrace();
+        assertFalse(trace.contains("event_5"));
+        assertTrue(trace.contains("{\"name\":\"event_6\",\"cat\":\"task\",\"ph\":\"B\",\"ts\":9.000"));
+        assertTrue(trace.contains("\"event_9\""));
+
+        traceRecorder.clear();
+        assertFalse(traceRecorder.toChromeTrace().contains("event_9"));
+
+        // the sequence starts again after clear, so a new event lands in the first slot.
+        traceRecorder.record(TraceRecorder.EVENT_START, "event_10", 15000L);
+        final String cleared = traceRecorder.toChromeTrace();
+        assertTrue(cleared.contains("\"event_10\""));
+        assertFalse(cleared.contains("event_9"));
+    }
+}
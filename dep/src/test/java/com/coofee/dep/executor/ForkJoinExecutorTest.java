@@ -0,0 +1,96 @@
+package com.coofee.dep.executor;
+
+import com.coofee.dep.Task;
+
+import org.junit.Test;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ForkJoinExecutorTest {
+
+    private final ForkJoinExecutor mExecutor = new ForkJoinExecutor(4);
+
+    @Test
+    public void testChainRunsOnOneThread() throws InterruptedException {
+        final Set<Thread> threadSet = ConcurrentHashMap.newKeySet();
+        final CountDownLatch latch = new CountDownLatch(10000);
+
+        // every task makes the next one ready, like a chain of tasks.
+        mExecutor.execute(Task.THREAD_MODE_ASYNC, new Runnable() {
+            @Override
+            public void run() {
+                threadSet.add(Thread.currentThread());
+                latch.countDown();
+                if (latch.getCount() > 0) {
+                    // released as the child of a completed task.
+                    final boolean releasing = mExecutor.beginReleaseChildren();
+                    try {
+                        mExecutor.execute(Task.THREAD_MODE_ASYNC, this);
+                    } finally {
+                        mExecutor.endReleaseChildren(releasing);
+                    }
+                }
+            }
+        });
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(1, threadSet.size());
+    }
+
+    @Test
+    public void testFanOut() throws InterruptedException {
+        final CountDownLatch latch = new CountDownLatch(100);
+        final Runnable child = new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        };
+
+        mExecutor.execute(Task.THREAD_MODE_ASYNC, new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 100; i++) {
+                    mExecutor.execute(Task.THREAD_MODE_ASYNC, child);
+                }
+            }
+        });
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testStartAndWaitFromRunningTask() throws InterruptedException {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch waited = new CountDownLatch(1);
+
+        // a running task starts another one and waits for it with a timeout, which never helps to run it.
+        mExecutor.execute(Task.THREAD_MODE_ASYNC, new Runnable() {
+            @Override
+            public void run() {
+                mExecutor.execute(Task.THREAD_MODE_ASYNC, new Runnable() {
+                    @Override
+                    public void run() {
+                        started.countDown();
+                    }
+                });
+
+                try {
+                    if (started.await(5, TimeUnit.SECONDS)) {
+                        waited.countDown();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+
+        assertTrue(waited.await(10, TimeUnit.SECONDS));
+    }
+}
@@ -0,0 +1,37 @@
+package com.coofee.dep.executor;
+
+import com.coofee.dep.Task;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertTrue;
+
+public class VirtualThreadExecutorTest {
+
+    @Test
+    public void testBlockingTasksOverlap() throws InterruptedException {
+        final VirtualThreadExecutor executor = new VirtualThreadExecutor(2);
+        final CountDownLatch latch = new CountDownLatch(200);
+        final Runnable blocking = new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(100);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                latch.countDown();
+            }
+        };
+
+        for (int i = 0; i < 200; i++) {
+            executor.execute(Task.THREAD_MODE_IO, blocking);
+        }
+
+        // 200 tasks on 2 cpu threads would take 10 seconds.
+        assertTrue(latch.await(3, TimeUnit.SECONDS));
+    }
+}